@@ -0,0 +1,105 @@
+/**
+ * A bloom filter over strings. It can say for sure that a word was never
+ * added, and only says a missing word might be there at about the false
+ * positive rate it was built for, as long as no more than the expected number
+ * of words are added.
+ *
+ * @author SirIan
+ *
+ */
+public class BloomFilter {
+
+	private final long[] bits;
+	private final long size;
+	private final int hashes;
+
+	/**
+	 * Builds a filter big enough for the expected number of words at the given
+	 * false positive rate.
+	 *
+	 * @param expected          the number of words expected to be added
+	 * @param falsePositiveRate the chance a missing word is reported as there,
+	 *                          between 0 and 1
+	 */
+	public BloomFilter(int expected, double falsePositiveRate) {
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("The false positive rate must be between 0 and 1: " + falsePositiveRate);
+		}
+		int words = Math.max(1, expected);
+		long bits = (long) Math.ceil(-words * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		this.bits = new long[(int) Math.max(1, (bits + 63) / 64)];
+		this.size = this.bits.length * 64L;
+		this.hashes = Math.max(1, (int) Math.round((double) size / words * Math.log(2)));
+	}
+
+	/**
+	 * Adds the word to the filter
+	 *
+	 * @param word the word to add
+	 */
+	public void add(String word) {
+		long hash = hash(word);
+		int first = (int) hash;
+		int second = (int) (hash >>> 32) | 1;
+		for (int i = 0; i < hashes; i++) {
+			long bit = Math.floorMod(first + (long) i * second, size);
+			bits[(int) (bit >>> 6)] |= 1L << bit;
+		}
+	}
+
+	/**
+	 * Checks if the word might have been added
+	 *
+	 * @param word the word to check
+	 * @return false if the word was never added, true if it probably was
+	 */
+	public boolean mightContain(String word) {
+		long hash = hash(word);
+		int first = (int) hash;
+		int second = (int) (hash >>> 32) | 1;
+		for (int i = 0; i < hashes; i++) {
+			long bit = Math.floorMod(first + (long) i * second, size);
+			if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets how much memory the filter uses
+	 *
+	 * @return the number of bits in the filter
+	 */
+	public long getBits() {
+		return size;
+	}
+
+	/**
+	 * Gets how many hashes are checked for every word
+	 *
+	 * @return the number of hashes
+	 */
+	public int getHashes() {
+		return hashes;
+	}
+
+	/**
+	 * Hashes the characters of the word into 64 bits, so two independent 32 bit
+	 * hashes can be taken from it.
+	 *
+	 * @param word the word to hash
+	 * @return the 64 bit hash
+	 */
+	private static long hash(String word) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < word.length(); i++) {
+			hash ^= word.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
@@ -0,0 +1,407 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An inverted index that only keeps how many times each word is in each path,
+ * not where. The search results and word counts are the same as
+ * {@link InvertedIndex}, but the positions can not be written out.
+ *
+ * Since the positions are not kept, only the last position of each word in
+ * each path is remembered. The positions of a word in a path are expected in
+ * increasing order, the way the files are read, and a position that is not
+ * after the last one is taken to be a repeat and is not counted.
+ *
+ * @author SirIan
+ *
+ */
+public class CountsInvertedIndex implements InvertedIndexInterface {
+
+	private final TreeMap<String, Counts> index;
+	private final DocumentRegistry documents;
+	private int[] totals;
+
+	/**
+	 * Initializes the index.
+	 */
+	public CountsInvertedIndex() {
+		this.index = new TreeMap<>();
+		this.documents = new DocumentRegistry();
+		this.totals = new int[16];
+	}
+
+	@Override
+	public boolean hasPositions() {
+		return false;
+	}
+
+	/**
+	 * Adds the word and the position it was found to the index.
+	 *
+	 * @param word     word to add to index
+	 * @param position position word was found
+	 * @param path     The file the word was from
+	 * @return false if the position is not after the last position of the word
+	 *         in the path, since it is taken to be a repeat
+	 */
+	@Override
+	public boolean add(String word, int position, String path) {
+		int document = findOrAddDocument(path);
+		if (!getOrAddWord(word).add(document, position)) {
+			return false;
+		}
+		totals[document]++;
+		return true;
+	}
+
+	@Override
+	public boolean addAll(String[] text, String path, int start) {
+		boolean changed = false;
+		for (String word : text) {
+			if (add(word, start, path)) {
+				changed = true;
+			}
+			start++;
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean addDocument(String path, Map<String, ? extends Collection<Integer>> document) {
+		int id = findOrAddDocument(path);
+		int added = 0;
+		for (Map.Entry<String, ? extends Collection<Integer>> entry : document.entrySet()) {
+			if (entry.getValue().isEmpty()) {
+				continue;
+			}
+			Counts counts = getOrAddWord(entry.getKey());
+			for (int position : entry.getValue()) {
+				if (counts.add(id, position)) {
+					added++;
+				}
+			}
+		}
+		totals[id] += added;
+		return added > 0;
+	}
+
+	@Override
+	public boolean removeDocument(String path) {
+		int document = documents.getId(path);
+		if (document < 0 || totals[document] == 0) {
+			return false;
+		}
+		index.values().removeIf(counts -> counts.remove(document));
+		totals[document] = 0;
+		return true;
+	}
+
+	@Override
+	public boolean replaceDocument(String path, Map<String, ? extends Collection<Integer>> document) {
+		boolean removed = removeDocument(path);
+		return addDocument(path, document) || removed;
+	}
+
+	@Override
+	public boolean contains(String word) {
+		return index.containsKey(word);
+	}
+
+	@Override
+	public boolean contains(String word, String location) {
+		Counts counts = index.get(word);
+		int document = documents.getId(location);
+		return counts != null && document >= 0 && counts.contains(document);
+	}
+
+	/**
+	 * Not supported, since the positions are not kept.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public boolean contains(String word, String location, int position) {
+		throw new UnsupportedOperationException("A counts only index does not keep positions.");
+	}
+
+	@Override
+	public int getSize() {
+		return index.size();
+	}
+
+	@Override
+	public ArrayList<Results> exactSearch(Collection<String> queryWords) {
+		Postings.Counter counts = Postings.Counter.get(documents.size());
+		for (String query : queryWords) {
+			Counts word = index.get(query);
+			if (word != null) {
+				word.addTo(counts);
+			}
+		}
+		return toResults(counts, QueryBudget.UNLIMITED);
+	}
+
+	@Override
+	public ArrayList<Results> partialSearch(Collection<String> queryWords) {
+		Postings.Counter counts = Postings.Counter.get(documents.size());
+		for (String query : queryWords) {
+			for (Map.Entry<String, Counts> entry : index.tailMap(query).entrySet()) {
+				if (!entry.getKey().startsWith(query)) {
+					break;
+				}
+				entry.getValue().addTo(counts);
+			}
+		}
+		return toResults(counts, QueryBudget.UNLIMITED);
+	}
+
+	/**
+	 * Searches for the best results. The list is cut down after every path is
+	 * scored.
+	 *
+	 * @param queryWords  the words to look for
+	 * @param exactSearch a boolean to see if the exact flag is passed in
+	 * @param limit       how many results to keep, or 0 to keep all of them
+	 * @return an ArrayList of the best results for the words
+	 */
+	@Override
+	public ArrayList<Results> searchIndex(Collection<String> queryWords, boolean exactSearch, int limit) {
+		ArrayList<Results> results = searchIndex(queryWords, exactSearch);
+		if (limit > 0 && results.size() > limit) {
+			return new ArrayList<>(results.subList(0, limit));
+		}
+		return results;
+	}
+
+	@Override
+	public ArrayList<Results> searchIndex(Collection<String> queryWords, boolean exactSearch, int limit,
+			QueryBudget budget) {
+		if (budget.isUnlimited()) {
+			return searchIndex(queryWords, exactSearch, limit);
+		}
+		Postings.Counter counts = Postings.Counter.get(documents.size());
+		for (String query : queryWords) {
+			if (!count(query, exactSearch, counts, budget)) {
+				break;
+			}
+		}
+		return QueryBudget.top(toResults(counts, budget), limit);
+	}
+
+	/**
+	 * Adds the counts of the words matching one query word, as long as the budget
+	 * lets it look at them
+	 *
+	 * @param query       the query word
+	 * @param exactSearch a boolean to see if the exact flag is passed in
+	 * @param counts      the counts for every document
+	 * @param budget      the budget of the query
+	 * @return false if the budget ran out
+	 */
+	private boolean count(String query, boolean exactSearch, Postings.Counter counts, QueryBudget budget) {
+		for (Map.Entry<String, Counts> entry : index.tailMap(query).entrySet()) {
+			if (exactSearch ? !entry.getKey().equals(query) : !entry.getKey().startsWith(query)) {
+				break;
+			}
+			if (!budget.allowTerm()) {
+				return false;
+			}
+			entry.getValue().addTo(counts);
+		}
+		return true;
+	}
+
+	/**
+	 * Turns the counts of the documents the query found into sorted results
+	 *
+	 * @param counts the counts of the documents the query found
+	 * @param budget the budget of the query, which limits how many results are
+	 *               made
+	 * @return the sorted results of every document with a count
+	 */
+	private ArrayList<Results> toResults(Postings.Counter counts, QueryBudget budget) {
+		ArrayList<Results> results = new ArrayList<>(counts.size());
+		for (int i = 0; i < counts.size(); i++) {
+			int document = counts.id(i);
+			if (!budget.allowDocument()) {
+				break;
+			}
+			results.add(new Results(documents.getPath(document), counts.count(document), totals[document]));
+		}
+		Collections.sort(results);
+		return results;
+	}
+
+	/**
+	 * Not supported, since the positions are not kept.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void save(Path path) throws IOException {
+		throw new UnsupportedOperationException("A counts only index does not keep positions to save.");
+	}
+
+	@Override
+	public void toJsonAsLocation(Path path) throws IOException {
+		TreeMap<String, Integer> locations = new TreeMap<>();
+		for (int document = 0; document < documents.size(); document++) {
+			if (totals[document] > 0) {
+				locations.put(documents.getPath(document), totals[document]);
+			}
+		}
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			TreeJSONWriter.writeLocations(locations, writer, 0);
+		}
+	}
+
+	/**
+	 * Not supported, since the positions are not kept.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void toJSON(Path path) throws IOException {
+		throw new UnsupportedOperationException("A counts only index does not keep positions to write.");
+	}
+
+	@Override
+	public String toString() {
+		return index.keySet().toString();
+	}
+
+	/**
+	 * Gets the counts of a word, adding the word if it is new
+	 *
+	 * @param word the word to look up
+	 * @return the counts of the word
+	 */
+	private Counts getOrAddWord(String word) {
+		Counts counts = index.get(word);
+		if (counts == null) {
+			counts = new Counts();
+			index.put(word, counts);
+		}
+		return counts;
+	}
+
+	/**
+	 * Gets the id of the path, giving it the next id if it is new
+	 *
+	 * @param path the path to look up
+	 * @return the id of the path
+	 */
+	private int findOrAddDocument(String path) {
+		int id = documents.getOrAdd(path);
+		if (id == totals.length) {
+			totals = Arrays.copyOf(totals, totals.length * 2);
+		}
+		return id;
+	}
+
+	/**
+	 * The paths a word was found in, how many times and the last position it was
+	 * found at, kept in growing arrays sorted by path id.
+	 */
+	private static class Counts {
+
+		private int[] documents;
+		private int[] counts;
+		private int[] last;
+		private int size;
+
+		/**
+		 * Starts with room for a few paths
+		 */
+		public Counts() {
+			this.documents = new int[2];
+			this.counts = new int[2];
+			this.last = new int[2];
+			this.size = 0;
+		}
+
+		/**
+		 * Counts a position of the word in a path. Paths are usually added one
+		 * after another, so the last path is checked before searching for it.
+		 *
+		 * @param document the id of the path
+		 * @param position the position the word was found
+		 * @return false if the position is not after the last position counted for
+		 *         the path
+		 */
+		public boolean add(int document, int position) {
+			int found = size > 0 && documents[size - 1] == document ? size - 1
+					: Arrays.binarySearch(documents, 0, size, document);
+			if (found >= 0) {
+				if (position <= last[found]) {
+					return false;
+				}
+				counts[found]++;
+				last[found] = position;
+				return true;
+			}
+
+			int insert = -found - 1;
+			if (size == documents.length) {
+				documents = Arrays.copyOf(documents, size * 2);
+				counts = Arrays.copyOf(counts, size * 2);
+				last = Arrays.copyOf(last, size * 2);
+			}
+			System.arraycopy(documents, insert, documents, insert + 1, size - insert);
+			System.arraycopy(counts, insert, counts, insert + 1, size - insert);
+			System.arraycopy(last, insert, last, insert + 1, size - insert);
+			documents[insert] = document;
+			counts[insert] = 1;
+			last[insert] = position;
+			size++;
+			return true;
+		}
+
+		/**
+		 * Removes a path from the word
+		 *
+		 * @param document the id of the path
+		 * @return true if the word is not in any path anymore
+		 */
+		public boolean remove(int document) {
+			int kept = 0;
+			for (int i = 0; i < size; i++) {
+				if (documents[i] != document) {
+					documents[kept] = documents[i];
+					counts[kept] = counts[i];
+					last[kept] = last[i];
+					kept++;
+				}
+			}
+			size = kept;
+			return size == 0;
+		}
+
+		/**
+		 * Checks if the word was found in a path
+		 *
+		 * @param document the id of the path
+		 * @return true if the word was found in the path
+		 */
+		public boolean contains(int document) {
+			return Arrays.binarySearch(documents, 0, size, document) >= 0;
+		}
+
+		/**
+		 * Adds the counts of the word to the counts for every path
+		 *
+		 * @param totals the counts for every path
+		 */
+		public void addTo(Postings.Counter totals) {
+			totals.accumulate(documents, counts, size);
+		}
+	}
+}
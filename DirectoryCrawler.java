@@ -0,0 +1,226 @@
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Walks a directory tree on a fork join pool. Every directory is its own task,
+ * so idle threads steal whole subtrees from busy ones, and every file that
+ * passes the filters is handed off as soon as it is found instead of after the
+ * whole walk is done.
+ * 
+ * @author SirIan
+ *
+ */
+public class DirectoryCrawler {
+
+	private final int maxDepth;
+	private final long maxSize;
+	private final Collection<String> extensions;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Constructs a crawler that accepts text files at any depth and of any size.
+	 */
+	public DirectoryCrawler() {
+		this(Integer.MAX_VALUE, Long.MAX_VALUE, FileReader.TEXT_EXTENSIONS);
+	}
+
+	/**
+	 * Constructs a crawler with the given filters.
+	 * 
+	 * @param maxDepth   how many directories deep to look, where the files directly
+	 *                   inside the starting directory are at depth 1
+	 * @param maxSize    the largest file size in bytes to accept
+	 * @param extensions the lower case endings a file must have to be accepted
+	 */
+	public DirectoryCrawler(int maxDepth, long maxSize, Collection<String> extensions) {
+		this.maxDepth = maxDepth;
+		this.maxSize = maxSize;
+		this.extensions = extensions;
+		this.pool = ForkJoinPool.commonPool();
+	}
+
+	/**
+	 * Checks if a file passes the extension and size filters.
+	 * 
+	 * @param file       the file to check
+	 * @param attributes the attributes already read for the file
+	 * @return true if the file should be handed off
+	 */
+	public boolean accept(Path file, BasicFileAttributes attributes) {
+		return attributes.size() <= maxSize && FileReader.hasExtension(file, extensions);
+	}
+
+	/**
+	 * Checks if a file passes the extension and size filters, reading its
+	 * attributes first.
+	 * 
+	 * @param file the file to check
+	 * @return true if the file should be handed off, false if it should not or
+	 *         its attributes can not be read
+	 */
+	public boolean accept(Path file) {
+		try {
+			return accept(file, Files.readAttributes(file, BasicFileAttributes.class));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Gets how many directories deep the crawler looks
+	 * 
+	 * @return the depth of the deepest files accepted, where the files directly
+	 *         inside the starting directory are at depth 1
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Walks the path and gives every accepted file to the handler. The handler is
+	 * called from the pool threads, so it should be thread safe and quick, like
+	 * putting the file on a work queue. An entry or directory under the path that
+	 * can not be read is reported and skipped, so the rest of the walk goes on.
+	 * 
+	 * @param path    the directory or file to crawl
+	 * @param handler what to do with every accepted file
+	 * @throws IOException if the path itself can not be read
+	 */
+	public void crawl(Path path, Consumer<Path> handler) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		if (!attributes.isDirectory()) {
+			if (accept(path, attributes)) {
+				handler.accept(path);
+			}
+			return;
+		}
+
+		pool.invoke(new CrawlTask(path, 1, handler));
+	}
+
+	/**
+	 * Walks the path and collects every accepted file, for reading them on one
+	 * thread afterwards.
+	 * 
+	 * @param path the directory or file to crawl
+	 * @return the accepted files, sorted
+	 * @throws IOException if the path itself can not be read
+	 */
+	public ArrayList<Path> list(Path path) throws IOException {
+		List<Path> found = Collections.synchronizedList(new ArrayList<>());
+		crawl(path, found::add);
+		ArrayList<Path> files = new ArrayList<>(found);
+		Collections.sort(files);
+		return files;
+	}
+
+	/**
+	 * Walks the path and reads every accepted file into the index on the work
+	 * queue, then waits for all of the files to finish.
+	 * 
+	 * @param path  the directory or file to crawl
+	 * @param index the index to add the words to, which has to be safe to change
+	 *              from many threads at once
+	 * @param queue the work queue to read the files on
+	 * @throws IOException
+	 */
+	public void crawl(Path path, InvertedIndexInterface index, WorkQueue queue) throws IOException {
+		try {
+			crawl(path, file -> queue.execute(new FileTask(file, index)));
+		} finally {
+			queue.finish();
+		}
+	}
+
+	/**
+	 * A task that lists one directory, handles the files in it and forks a new task
+	 * for every directory in it.
+	 */
+	private class CrawlTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Path directory;
+		private final int depth;
+		private final Consumer<Path> handler;
+
+		/**
+		 * Constructs the task for one directory
+		 * 
+		 * @param directory the directory to list
+		 * @param depth     the depth of the entries inside the directory
+		 * @param handler   what to do with every accepted file
+		 */
+		public CrawlTask(Path directory, int depth, Consumer<Path> handler) {
+			this.directory = directory;
+			this.depth = depth;
+			this.handler = handler;
+		}
+
+		@Override
+		protected void compute() {
+			ArrayList<CrawlTask> subdirectories = new ArrayList<>();
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+				for (Path entry : entries) {
+					BasicFileAttributes attributes;
+					try {
+						attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+					} catch (IOException e) {
+						System.err.println("Unable to read the attributes of: " + entry);
+						continue;
+					}
+					if (attributes.isDirectory()) {
+						if (depth < maxDepth) {
+							subdirectories.add(new CrawlTask(entry, depth + 1, handler));
+						}
+					} else if (accept(entry, attributes)) {
+						handler.accept(entry);
+					}
+				}
+			} catch (IOException | DirectoryIteratorException e) {
+				System.err.println("Unable to list the directory: " + directory);
+			}
+			invokeAll(subdirectories);
+		}
+	}
+
+	/**
+	 * A task that reads a single file and adds it to the index.
+	 */
+	private static class FileTask implements Runnable {
+
+		private final Path file;
+		private final InvertedIndexInterface index;
+
+		/**
+		 * Constructs the task for one file
+		 * 
+		 * @param file  the file to read
+		 * @param index the index to add the words to
+		 */
+		public FileTask(Path file, InvertedIndexInterface index) {
+			this.file = file;
+			this.index = index;
+		}
+
+		@Override
+		public void run() {
+			try {
+				index.addDocument(file.toString(), FileReader.readDocument(file));
+			} catch (IOException e) {
+				System.err.println("Unable to read the file: " + file);
+			}
+		}
+	}
+}
@@ -0,0 +1,186 @@
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Gives every path a small id, starting from 0, so an index can key its maps
+ * and arrays on ints instead of on the whole path. Each directory is kept once
+ * and shared by all of its files, and the file names are kept as UTF-8 bytes
+ * in one growing array, so the path strings are only built again when they are
+ * asked for.
+ *
+ * Ids are never given back. A path that is removed from an index and added
+ * again gets the same id.
+ *
+ * @author SirIan
+ *
+ */
+public class DocumentRegistry {
+
+	private final ArrayList<String> directories;
+	private final HashMap<String, Integer> directoryIds;
+
+	private int[] directory;
+	private int[] hashes;
+	private int[] offsets;
+	private byte[] names;
+	private int size;
+
+	/**
+	 * An open addressing table of the ids, stored one higher so 0 means empty.
+	 */
+	private int[] table;
+
+	/**
+	 * Initializes an empty registry.
+	 */
+	public DocumentRegistry() {
+		this.directories = new ArrayList<>();
+		this.directoryIds = new HashMap<>();
+		this.directory = new int[16];
+		this.hashes = new int[16];
+		this.offsets = new int[17];
+		this.names = new byte[256];
+		this.size = 0;
+		this.table = new int[32];
+	}
+
+	/**
+	 * Gets the id of the path
+	 *
+	 * @param path the path to look up
+	 * @return the id of the path, or -1 if it was never added
+	 */
+	public int getId(String path) {
+		int cut = cut(path);
+		Integer parent = directoryIds.get(path.substring(0, cut));
+		if (parent == null) {
+			return -1;
+		}
+		return find(parent, path.substring(cut).getBytes(StandardCharsets.UTF_8), hash(path));
+	}
+
+	/**
+	 * Gets the id of the path, giving it the next id if it is new
+	 *
+	 * @param path the path to look up
+	 * @return the id of the path
+	 */
+	public int getOrAdd(String path) {
+		int cut = cut(path);
+		String prefix = path.substring(0, cut);
+		Integer parent = directoryIds.get(prefix);
+		if (parent == null) {
+			parent = directories.size();
+			directories.add(prefix);
+			directoryIds.put(prefix, parent);
+		}
+		byte[] name = path.substring(cut).getBytes(StandardCharsets.UTF_8);
+		int hash = hash(path);
+		int id = find(parent, name, hash);
+		if (id >= 0) {
+			return id;
+		}
+
+		id = size++;
+		if (id == directory.length) {
+			directory = Arrays.copyOf(directory, id * 2);
+			hashes = Arrays.copyOf(hashes, id * 2);
+			offsets = Arrays.copyOf(offsets, id * 2 + 1);
+		}
+		int start = offsets[id];
+		if (start + name.length > names.length) {
+			names = Arrays.copyOf(names, Math.max(names.length * 2, start + name.length));
+		}
+		System.arraycopy(name, 0, names, start, name.length);
+		directory[id] = parent;
+		hashes[id] = hash;
+		offsets[id + 1] = start + name.length;
+
+		if (size * 2 > table.length) {
+			table = new int[table.length * 2];
+			for (int i = 0; i < size - 1; i++) {
+				insert(i);
+			}
+		}
+		insert(id);
+		return id;
+	}
+
+	/**
+	 * Builds the path of an id
+	 *
+	 * @param id the id of the path
+	 * @return the path
+	 */
+	public String getPath(int id) {
+		return directories.get(directory[id])
+				+ new String(names, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Gets how many ids were given out, which is one more than the highest id
+	 *
+	 * @return the number of paths
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Looks for a path in the table
+	 *
+	 * @param parent the id of the directory of the path
+	 * @param name   the file name of the path
+	 * @param hash   the hash of the whole path
+	 * @return the id of the path, or -1 if it is not in the table
+	 */
+	private int find(int parent, byte[] name, int hash) {
+		int mask = table.length - 1;
+		for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+			int id = table[slot] - 1;
+			if (hashes[id] == hash && directory[id] == parent && Arrays.equals(names, offsets[id], offsets[id + 1],
+					name, 0, name.length)) {
+				return id;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Puts an id in the first free slot for its hash
+	 *
+	 * @param id the id to put in the table
+	 */
+	private void insert(int id) {
+		int mask = table.length - 1;
+		int slot = hashes[id] & mask;
+		while (table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = id + 1;
+	}
+
+	/**
+	 * Finds where the directory of a path ends
+	 *
+	 * @param path the path to split
+	 * @return the index just past the last separator, or 0 if there is none
+	 */
+	private static int cut(String path) {
+		return Math.max(path.lastIndexOf('/'), path.lastIndexOf(File.separatorChar)) + 1;
+	}
+
+	/**
+	 * Spreads the hash code of the path so the low bits can pick a slot
+	 *
+	 * @param path the path to hash
+	 * @return the spread hash
+	 */
+	private static int hash(String path) {
+		int hash = path.hashCode() * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
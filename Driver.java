@@ -1,6 +1,8 @@
 import java.io.IOException;
 import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 
 /**
  * The Great Creator Of This File!
@@ -18,103 +20,376 @@ public class Driver {
 
 	public static void main(String[] args) {
 		ArgumentMap argumentMap = new ArgumentMap(args);
-		if (argumentMap.hasFlag("-threads")) {
-			ThreadSafeInvertedIndex index = new ThreadSafeInvertedIndex();
-			WorkQueue queue = new WorkQueue(Integer.parseInt(argumentMap.getString("-threads", "5")));
-			MultiThreadQueryParser query = new MultiThreadQueryParser(index, queue);
-			if (argumentMap.hasFlag("-path") && argumentMap.getPath("-path") != null) {
-				try {
-					ThreadSafeFileReader.readFiles(argumentMap.getPath("-path"), index, queue);
-				} catch (InvalidPathException | IOException e) {
-					System.err.println(
-							"Unable to access the path to make an Inverted Index: " + argumentMap.getPath("-path"));
-				}
+		QueryLimiter limiter = new QueryLimiter(
+				new QueryBudget(Integer.parseInt(argumentMap.getString("-maxterms", "0")),
+						Integer.parseInt(argumentMap.getString("-maxdocs", "0")),
+						Long.parseLong(argumentMap.getString("-timeout", "0"))),
+				Integer.parseInt(argumentMap.getString("-maxqueries", "0")));
+		boolean limited = argumentMap.hasFlag("-maxterms") || argumentMap.hasFlag("-maxdocs")
+				|| argumentMap.hasFlag("-timeout") || argumentMap.hasFlag("-maxqueries");
+		if (argumentMap.hasFlag("-warmup")) {
+			try {
+				report(argumentMap, "Warmed up in " + Warmup.run(Integer.parseInt(
+						argumentMap.getString("-warmup", String.valueOf(Warmup.DEFAULT_ROUNDS)))) + " ms");
+			} catch (IOException e) {
+				System.err.println("Unable to warm up with the built in documents");
+			}
+		}
+		WorkQueue queue = argumentMap.hasFlag("-threads")
+				? new WorkQueue(Integer.parseInt(argumentMap.getString("-threads", "5")))
+				: null;
+		InvertedIndexInterface invertedIndex = index(argumentMap);
+		if (invertedIndex == null) {
+			if (queue != null) {
+				queue.shutdown();
 			}
+			return;
+		}
+		QueryParserInterface query = parser(argumentMap, invertedIndex, queue, limiter);
 
-			if (argumentMap.hasFlag("-search") && argumentMap.hasValue("-search")) {
-				try {
-					query.readQueries(argumentMap.getPath("-search"), argumentMap.hasFlag("-exact"));
-				} catch (InvalidPathException | IOException e) {
-					System.err.println(
-							"Unable to access the path to make an Inverted Index: " + argumentMap.getPath("-exact"));
-				}
+		load(argumentMap, invertedIndex);
+		build(argumentMap, invertedIndex, queue);
+		save(argumentMap, invertedIndex);
+		search(argumentMap, invertedIndex, query, limiter, limited);
+		write(argumentMap, invertedIndex, query);
+
+		if (argumentMap.hasFlag("-watch") && argumentMap.getPath("-path") != null) {
+			try (IndexWatcher watcher = new IndexWatcher(argumentMap.getPath("-path"), invertedIndex,
+					crawler(argumentMap), Long.parseLong(argumentMap.getString("-watch",
+							String.valueOf(IndexWatcher.DEFAULT_QUIET_MILLIS))))) {
+				Runtime.getRuntime().addShutdownHook(new Thread(() -> report(argumentMap, "Watched " + watcher)));
+				report(argumentMap, "Watching " + argumentMap.getPath("-path") + " for changes");
+				watcher.watch(changed -> {
+					report(argumentMap, "Updated " + changed + " files");
+					refresh(argumentMap, invertedIndex, limiter, limited);
+				});
+			} catch (InvalidPathException | IOException e) {
+				System.err.println("Unable to watch the path for changes: " + argumentMap.getPath("-path"));
 			}
-			if (argumentMap.hasFlag("-index")) {
-				try {
-					index.toJSON(argumentMap.getPath("-index", Paths.get("index.json")));
+		}
 
-				} catch (IOException e) {
-					System.err.println(
-							"Unable to access the path to write a JSON files: " + argumentMap.getPath("-index"));
-				}
+		if (queue != null) {
+			queue.shutdown();
+		}
+		close(argumentMap, invertedIndex);
+	}
+
+	/**
+	 * Prints how long a step took or how it went, only when -verbose is given.
+	 * It goes to standard error, so it is never mixed with the output of the
+	 * program.
+	 *
+	 * @param argumentMap the command-line arguments
+	 * @param message     what to print
+	 */
+	private static void report(ArgumentMap argumentMap, String message) {
+		if (argumentMap.hasFlag("-verbose")) {
+			System.err.println(message);
+		}
+	}
+
+	/**
+	 * Makes the index the arguments ask for. The first of -shards, -nopositions,
+	 * -offheap, -wal, -segments and -bloom that is given picks the kind of index.
+	 * With -threads the index has to be safe to change from many threads, so
+	 * -nopositions and -offheap can not be used with it, and -watch has to replace
+	 * and remove files, which -offheap can not do either.
+	 *
+	 * @param argumentMap the command-line arguments
+	 * @return the index, or null if it could not be opened
+	 */
+	private static InvertedIndexInterface index(ArgumentMap argumentMap) {
+		boolean threads = argumentMap.hasFlag("-threads");
+		if (argumentMap.hasFlag("-shards")) {
+			return new ShardedInvertedIndex(Integer.parseInt(argumentMap.getString("-shards", "4")));
+		} else if (argumentMap.hasFlag("-nopositions")) {
+			if (threads) {
+				System.err.println("Unable to index on many threads without positions, remove -threads or -nopositions");
+				return null;
+			}
+			return new CountsInvertedIndex();
+		} else if (argumentMap.hasFlag("-offheap")) {
+			if (threads) {
+				System.err.println("Unable to index on many threads off the heap, remove -threads or -offheap");
+				return null;
 			}
+			if (argumentMap.hasFlag("-watch")) {
+				System.err.println("Unable to watch for changes off the heap, where files can not be replaced, "
+						+ "remove -watch or -offheap");
+				return null;
+			}
+			return new OffHeapInvertedIndex();
+		} else if (argumentMap.hasFlag("-wal")) {
+			return durable(argumentMap);
+		} else if (argumentMap.hasFlag("-segments")) {
+			return new SegmentedInvertedIndex(
+					Integer.parseInt(argumentMap.getString("-segments",
+							String.valueOf(SegmentedInvertedIndex.DEFAULT_BUFFER_SIZE))),
+					Integer.parseInt(argumentMap.getString("-merge",
+							String.valueOf(SegmentedInvertedIndex.DEFAULT_MERGE_FACTOR))),
+					SegmentedInvertedIndex.DEFAULT_MAX_SEGMENTS);
+		} else if (argumentMap.hasFlag("-bloom")) {
+			int words = Integer.parseInt(
+					argumentMap.getString("-words", String.valueOf(InvertedIndex.DEFAULT_EXPECTED_WORDS)));
+			double rate = Double.parseDouble(
+					argumentMap.getString("-bloom", String.valueOf(InvertedIndex.DEFAULT_FALSE_POSITIVE_RATE)));
+			return threads ? new ThreadSafeInvertedIndex(words, rate) : new InvertedIndex(words, rate);
+		}
+		return threads ? new ThreadSafeInvertedIndex() : new InvertedIndex();
+	}
 
-			if (argumentMap.hasFlag("-results")) {
-				try {
-					query.toJSON(argumentMap.getPath("-results", Paths.get("results.json")));
-				} catch (InvalidPathException | IOException e) {
-					System.err.println("Unable to read the queries from the file: " + argumentMap.getPath("-results"));
+	/**
+	 * Makes the query parser the arguments ask for
+	 *
+	 * @param argumentMap   the command-line arguments
+	 * @param invertedIndex the index to search
+	 * @param queue         the work queue to search on, or null to search on this
+	 *                      thread
+	 * @param limiter       the limiter every search goes through
+	 * @return the query parser
+	 */
+	private static QueryParserInterface parser(ArgumentMap argumentMap, InvertedIndexInterface invertedIndex,
+			WorkQueue queue, QueryLimiter limiter) {
+		int top = Integer.parseInt(argumentMap.getString("-top", "0"));
+		if (argumentMap.hasFlag("-stream")) {
+			return new StreamingQueryParser(invertedIndex, queue, top, limiter, Integer.parseInt(
+					argumentMap.getString("-stream", String.valueOf(ResultsSorter.DEFAULT_MEMORY))));
+		} else if (queue != null) {
+			return new MultiThreadQueryParser(invertedIndex, queue, top, limiter);
+		}
+		return new QueryFileParser(invertedIndex, top, limiter);
+	}
+
+	/**
+	 * Reads the files under -path into the index, on the work queue if there is
+	 * one.
+	 *
+	 * @param argumentMap   the command-line arguments
+	 * @param invertedIndex the index to add the files to
+	 * @param queue         the work queue to read the files on, or null to read
+	 *                      them on this thread
+	 */
+	private static void build(ArgumentMap argumentMap, InvertedIndexInterface invertedIndex, WorkQueue queue) {
+		if (!argumentMap.hasFlag("-path") || argumentMap.getPath("-path") == null) {
+			return;
+		}
+		try {
+			long start = System.nanoTime();
+			if (queue != null) {
+				crawler(argumentMap).crawl(argumentMap.getPath("-path"), invertedIndex, queue);
+			} else if (argumentMap.hasFlag("-depth") || argumentMap.hasFlag("-maxsize")
+					|| argumentMap.hasFlag("-extensions")) {
+				for (Path file : crawler(argumentMap).list(argumentMap.getPath("-path"))) {
+					try {
+						FileReader.readFile(file, invertedIndex);
+					} catch (IOException e) {
+						System.err.println("Unable to read the file: " + file);
+					}
 				}
+			} else {
+				FileReader.readFiles(argumentMap.getPath("-path"), invertedIndex);
 			}
+			report(argumentMap,
+					"Indexed " + argumentMap.getPath("-path") + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+		} catch (InvalidPathException | IOException e) {
+			System.err.println("Unable to access the path to make an Inverted Index: " + argumentMap.getPath("-path"));
+		}
+	}
 
-			if (argumentMap.hasFlag("-locations")) {
-				try {
-					index.toJsonAsLocation(argumentMap.getPath("-locations", Paths.get("locations.json")));
-				} catch (IOException e) {
-					System.err.println("Unable to open file : " + argumentMap.getPath("-locations"));
-				}
+	/**
+	 * Searches the queries in -search and prints how the searches went
+	 *
+	 * @param argumentMap   the command-line arguments
+	 * @param invertedIndex the index that was searched
+	 * @param query         the query parser to search with
+	 * @param limiter       the limiter every search goes through
+	 * @param limited       true if any of the limits were given
+	 */
+	private static void search(ArgumentMap argumentMap, InvertedIndexInterface invertedIndex,
+			QueryParserInterface query, QueryLimiter limiter, boolean limited) {
+		if (!argumentMap.hasFlag("-search") || !argumentMap.hasValue("-search")) {
+			return;
+		}
+		try {
+			query.readQueries(argumentMap.getPath("-search"), argumentMap.hasFlag("-exact"));
+			if (limited) {
+				report(argumentMap, "Queries " + limiter);
 			}
-			queue.shutdown();
-		} else {
-			InvertedIndex invertedIndex = new InvertedIndex();
-			QueryFileParser query = new QueryFileParser(invertedIndex);
-			if (argumentMap.hasFlag("-path") && argumentMap.getPath("-path") != null) {
-				try {
-					FileReader.readFiles(argumentMap.getPath("-path"), invertedIndex);
-				} catch (InvalidPathException | IOException e) {
-					System.err.println(
-							"Unable to access the path to make an Inverted Index: " + argumentMap.getPath("-path"));
-				}
+			if (argumentMap.hasFlag("-top") && invertedIndex instanceof InvertedIndex) {
+				report(argumentMap, "Top results search " + ((InvertedIndex) invertedIndex).getEvaluator());
 			}
+			if (invertedIndex instanceof SegmentedInvertedIndex) {
+				SegmentedInvertedIndex segmented = (SegmentedInvertedIndex) invertedIndex;
+				report(argumentMap, "Searched " + segmented.getSegmentCount() + " segments, " + segmented.getLatency());
+			}
+		} catch (InvalidPathException | IOException e) {
+			System.err.println("Unable to search the queries in: " + argumentMap.getPath("-search"));
+		}
+	}
 
-			if (argumentMap.hasFlag("-search") && argumentMap.hasValue("-search")) {
-				try {
-					query.readQueries(argumentMap.getPath("-search"), argumentMap.hasFlag("-exact"));
-				} catch (InvalidPathException | IOException e) {
-					System.err.println(
-							"Unable to access the path to make an Inverted Index: " + argumentMap.getPath("-exact"));
-				}
+	/**
+	 * Writes the -index, -results and -locations outputs that were asked for, and
+	 * lets go of the query parser once its results are written.
+	 *
+	 * @param argumentMap   the command-line arguments
+	 * @param invertedIndex the index to write
+	 * @param query         the query parser with the results
+	 */
+	private static void write(ArgumentMap argumentMap, InvertedIndexInterface invertedIndex,
+			QueryParserInterface query) {
+		if (argumentMap.hasFlag("-index") && !invertedIndex.hasPositions()) {
+			System.err.println("Unable to write the index without positions, remove -nopositions to use -index");
+		} else if (argumentMap.hasFlag("-index")) {
+			try {
+				invertedIndex.toJSON(argumentMap.getPath("-index", Paths.get("index.json")));
+			} catch (IOException e) {
+				System.err.println("Unable to access the path to write a JSON files: " + argumentMap.getPath("-index"));
 			}
-			if (argumentMap.hasFlag("-index")) {
-				try {
-					invertedIndex.toJSON(argumentMap.getPath("-index", Paths.get("index.json")));
+		}
 
-				} catch (IOException e) {
-					System.err.println(
-							"Unable to access the path to write a JSON files: " + argumentMap.getPath("-index"));
-				}
+		if (argumentMap.hasFlag("-results")) {
+			try {
+				query.toJSON(argumentMap.getPath("-results", Paths.get("results.json")));
+			} catch (InvalidPathException | IOException e) {
+				System.err.println("Unable to read the queries from the file: " + argumentMap.getPath("-results"));
 			}
+		}
+		close(argumentMap, query);
 
-			if (argumentMap.hasFlag("-results")) {
-				try {
-					query.toJSON(argumentMap.getPath("-results", Paths.get("results.json")));
-				} catch (InvalidPathException | IOException e) {
-					System.err.println("Unable to read the queries from the file: " + argumentMap.getPath("-results"));
-				}
+		if (argumentMap.hasFlag("-locations")) {
+			try {
+				invertedIndex.toJsonAsLocation(argumentMap.getPath("-locations", Paths.get("locations.json")));
+			} catch (IOException e) {
+				System.err.println("Unable to open file : " + argumentMap.getPath("-locations"));
 			}
+		}
+	}
 
-			if (argumentMap.hasFlag("-locations")) {
-				try {
-					invertedIndex.toJsonAsLocation(argumentMap.getPath("-locations", Paths.get("locations.json")));
-				} catch (IOException e) {
-					System.err.println("Unable to open file : " + argumentMap.getPath("-locations"));
-				}
+	/**
+	 * Makes a crawler with the -depth, -maxsize and -extensions filters. The
+	 * extensions are split on commas and the spaces around each one are trimmed.
+	 *
+	 * @param argumentMap the command-line arguments
+	 * @return the crawler
+	 */
+	private static DirectoryCrawler crawler(ArgumentMap argumentMap) {
+		ArrayList<String> extensions = new ArrayList<>();
+		for (String extension : argumentMap.getString("-extensions", "txt,text").split(",")) {
+			if (!extension.trim().isEmpty()) {
+				extensions.add(extension.trim().toLowerCase());
 			}
 		}
-		
-		/*
-		 * TODO Can be significantly simplified using upcasting.
-		 */
+		return new DirectoryCrawler(
+				Integer.parseInt(argumentMap.getString("-depth", String.valueOf(Integer.MAX_VALUE))),
+				Long.parseLong(argumentMap.getString("-maxsize", String.valueOf(Long.MAX_VALUE))), extensions);
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Opens the durable index in the -wal directory, recovering whatever was
+	 * logged there before.
+	 *
+	 * @param argumentMap the command-line arguments
+	 * @return the index, or null if it could not be opened
+	 */
+	private static DurableInvertedIndex durable(ArgumentMap argumentMap) {
+		try {
+			DurableInvertedIndex durable = new DurableInvertedIndex(argumentMap.getPath("-wal", Paths.get("index-wal")),
+					Long.parseLong(argumentMap.getString("-snapshot", "60")));
+			report(argumentMap, "Recovered " + durable.getReplayed() + " logged changes in "
+					+ durable.getRecoveryMillis() + " ms");
+			return durable;
+		} catch (InvalidPathException | IOException e) {
+			System.err.println("Unable to open the index in: " + argumentMap.getPath("-wal"));
+			return null;
+		}
+	}
+
+	/**
+	 * Saves a last snapshot and closes the log of a durable index.
+	 *
+	 * @param argumentMap   the command-line arguments
+	 * @param invertedIndex the index to close
+	 */
+	private static void close(ArgumentMap argumentMap, InvertedIndexInterface invertedIndex) {
+		if (invertedIndex instanceof DurableInvertedIndex) {
+			try {
+				((DurableInvertedIndex) invertedIndex).close();
+			} catch (IOException e) {
+				System.err.println("Unable to save the index in: " + argumentMap.getPath("-wal"));
+			}
+		}
+	}
+
+	/**
+	 * Adds a saved index to the index before any files are read, which is much
+	 * faster than reading and stemming the files again.
+	 *
+	 * @param argumentMap   the command-line arguments
+	 * @param invertedIndex the index to load into
+	 */
+	private static void load(ArgumentMap argumentMap, InvertedIndexInterface invertedIndex) {
+		if (argumentMap.hasFlag("-load") && argumentMap.hasValue("-load")) {
+			try {
+				long start = System.nanoTime();
+				invertedIndex.load(argumentMap.getPath("-load"));
+				report(argumentMap, "Loaded " + argumentMap.getPath("-load") + " in "
+						+ (System.nanoTime() - start) / 1000000 + " ms");
+			} catch (InvalidPathException | IOException e) {
+				System.err.println("Unable to load the saved index from: " + argumentMap.getPath("-load"));
+			}
+		}
+	}
+
+	/**
+	 * Saves the index once the files are read, so a later run can use -load.
+	 *
+	 * @param argumentMap   the command-line arguments
+	 * @param invertedIndex the index to save
+	 */
+	private static void save(ArgumentMap argumentMap, InvertedIndexInterface invertedIndex) {
+		if (argumentMap.hasFlag("-save") && !invertedIndex.hasPositions()) {
+			System.err.println("Unable to save the index without positions, remove -nopositions to use -save");
+		} else if (argumentMap.hasFlag("-save")) {
+			try {
+				invertedIndex.save(argumentMap.getPath("-save", Paths.get("index.bin")));
+			} catch (InvalidPathException | IOException e) {
+				System.err.println("Unable to save the index to: " + argumentMap.getPath("-save"));
+			}
+		}
+	}
+
+	/**
+	 * Deletes the runs a streaming query parser wrote its results to, once the
+	 * results are written.
+	 *
+	 * @param argumentMap the command-line arguments
+	 * @param query       the query parser
+	 */
+	private static void close(ArgumentMap argumentMap, QueryParserInterface query) {
+		if (query instanceof StreamingQueryParser) {
+			StreamingQueryParser streaming = (StreamingQueryParser) query;
+			report(argumentMap, "Streamed the results through " + streaming.getRuns() + " runs");
+			try {
+				streaming.close();
+			} catch (IOException e) {
+				System.err.println("Unable to delete the runs of the streamed results");
+			}
+		}
+	}
+
+	/**
+	 * Runs the queries again and writes every output that was asked for, after
+	 * the index changed in watch mode.
+	 *
+	 * @param argumentMap   the command-line arguments
+	 * @param invertedIndex the index that changed
+	 * @param limiter       the limiter every search goes through
+	 * @param limited       true if any of the limits were given
+	 */
+	private static void refresh(ArgumentMap argumentMap, InvertedIndexInterface invertedIndex, QueryLimiter limiter,
+			boolean limited) {
+		QueryParserInterface query = parser(argumentMap, invertedIndex, null, limiter);
+		search(argumentMap, invertedIndex, query, limiter, limited);
+		write(argumentMap, invertedIndex, query);
+	}
+}
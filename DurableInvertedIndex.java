@@ -0,0 +1,406 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An inverted index that survives a crash. Every document that is added,
+ * removed or replaced is written to a {@link WriteAheadLog} before the call
+ * returns, and a background thread saves a snapshot of the whole index every so
+ * often. Opening the index again loads the newest snapshot and replays the
+ * changes logged after it.
+ *
+ * Searches take a read lock and changes take a write lock, so a snapshot being
+ * saved holds back changes but never searches.
+ *
+ * @author SirIan
+ *
+ */
+public class DurableInvertedIndex implements InvertedIndexInterface, Closeable {
+
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+	private static final String SNAPSHOT_SUFFIX = ".index";
+
+	private final Path directory;
+	private final InvertedIndex index;
+	private final ReadWriteLock lock;
+	private final WriteAheadLog log;
+	private final ScheduledExecutorService snapshots;
+
+	private long lastSequence;
+	private final long recoveryNanos;
+	private final long replayed;
+
+	/**
+	 * Opens the index kept in the directory, recovering whatever was saved there
+	 * before, and starts taking snapshots.
+	 *
+	 * @param directory the directory to keep the log and snapshots in
+	 * @param interval  how many seconds to wait between snapshots, or 0 for no
+	 *                  background snapshots
+	 * @throws IOException
+	 */
+	public DurableInvertedIndex(Path directory, long interval) throws IOException {
+		this.directory = directory;
+		this.index = new InvertedIndex();
+		this.lock = new ReadWriteLock();
+		Files.createDirectories(directory);
+
+		long start = System.nanoTime();
+		long snapshot = 0;
+		Path newest = null;
+		for (Path file : snapshots(directory)) {
+			newest = file;
+			snapshot = sequenceOf(file);
+		}
+		if (newest != null) {
+			index.load(newest);
+		}
+
+		long[] count = { 0 };
+		this.lastSequence = WriteAheadLog.replay(directory, snapshot, (type, path, document) -> {
+			count[0]++;
+			if (type == WriteAheadLog.ADD) {
+				index.addDocument(path, document);
+			} else if (type == WriteAheadLog.REMOVE) {
+				index.removeDocument(path);
+			} else {
+				index.replaceDocument(path, document);
+			}
+		});
+		this.replayed = count[0];
+		this.recoveryNanos = System.nanoTime() - start;
+
+		this.log = new WriteAheadLog(directory, lastSequence + 1);
+		this.snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "index-snapshots");
+			thread.setDaemon(true);
+			return thread;
+		});
+		if (interval > 0) {
+			snapshots.scheduleWithFixedDelay(() -> {
+				try {
+					snapshot();
+				} catch (IOException e) {
+					System.err.println("Unable to save a snapshot of the index: " + e.getMessage());
+				}
+			}, interval, interval, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Gets how long it took to load the snapshot and replay the log when the
+	 * index was opened
+	 *
+	 * @return the recovery time in milliseconds
+	 */
+	public long getRecoveryMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(recoveryNanos);
+	}
+
+	/**
+	 * Gets how many logged changes were replayed when the index was opened
+	 *
+	 * @return the number of replayed changes
+	 */
+	public long getReplayed() {
+		return replayed;
+	}
+
+	/**
+	 * Saves a snapshot of the index. Changes wait while the snapshot is written,
+	 * but searches do not. Once the snapshot is safely on disk, the log files and
+	 * snapshots it replaces are deleted.
+	 *
+	 * @throws IOException
+	 */
+	public void snapshot() throws IOException {
+		Path temporary = directory.resolve(SNAPSHOT_PREFIX + "next.tmp");
+		long sequence;
+		lock.lockReadOnly();
+		try {
+			sequence = lastSequence;
+			log.roll();
+			index.save(temporary);
+		} finally {
+			lock.unlockReadOnly();
+		}
+
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+			channel.force(true);
+		}
+		Path snapshot = directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX));
+		Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		log.deleteOlderFiles();
+		for (Path file : snapshots(directory)) {
+			if (!file.equals(snapshot)) {
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+
+	/**
+	 * Stops taking snapshots, saves a last one and closes the log.
+	 */
+	@Override
+	public void close() throws IOException {
+		snapshots.shutdown();
+		try {
+			snapshots.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			snapshot();
+		} finally {
+			log.close();
+		}
+	}
+
+	/**
+	 * Logs a change and applies it under the write lock, then waits for the log to
+	 * reach the disk after the lock is let go, so changes made at the same time
+	 * share one fsync. The change is logged before the index is touched, so a
+	 * change that could not be logged is never seen by a search. A change that
+	 * turns out to do nothing is still logged, which is harmless since replaying
+	 * it does nothing as well.
+	 *
+	 * @param type     the kind of change
+	 * @param path     the document that changed
+	 * @param document the words and positions of the document, or null
+	 * @return true if the index changed
+	 */
+	private boolean apply(byte type, String path, Map<String, ? extends Collection<Integer>> document) {
+		boolean changed;
+		long sequence;
+		lock.lockReadWrite();
+		try {
+			sequence = log.append(type, path, document);
+			lastSequence = sequence;
+			if (type == WriteAheadLog.ADD) {
+				changed = index.addDocument(path, document);
+			} else if (type == WriteAheadLog.REMOVE) {
+				changed = index.removeDocument(path);
+			} else {
+				changed = index.replaceDocument(path, document);
+			}
+			if (!changed) {
+				return false;
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to log the change to " + path, e);
+		} finally {
+			lock.unlockReadWrite();
+		}
+
+		try {
+			log.await(sequence);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to log the change to " + path, e);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean add(String word, int position, String path) {
+		TreeMap<String, TreeSet<Integer>> document = new TreeMap<>();
+		document.put(word, new TreeSet<>());
+		document.get(word).add(position);
+		return apply(WriteAheadLog.ADD, path, document);
+	}
+
+	@Override
+	public boolean addAll(String[] text, String path, int start) {
+		TreeMap<String, TreeSet<Integer>> document = new TreeMap<>();
+		for (String word : text) {
+			document.putIfAbsent(word, new TreeSet<>());
+			document.get(word).add(start++);
+		}
+		return apply(WriteAheadLog.ADD, path, document);
+	}
+
+	@Override
+	public boolean addDocument(String path, Map<String, ? extends Collection<Integer>> document) {
+		return apply(WriteAheadLog.ADD, path, document);
+	}
+
+	@Override
+	public boolean removeDocument(String path) {
+		return apply(WriteAheadLog.REMOVE, path, null);
+	}
+
+	@Override
+	public boolean replaceDocument(String path, Map<String, ? extends Collection<Integer>> document) {
+		return apply(WriteAheadLog.REPLACE, path, document);
+	}
+
+	@Override
+	public void save(Path path) throws IOException {
+		lock.lockReadOnly();
+		try {
+			index.save(path);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public void toJsonAsLocation(Path path) throws IOException {
+		lock.lockReadOnly();
+		try {
+			index.toJsonAsLocation(path);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public void toJSON(Path path) throws IOException {
+		lock.lockReadOnly();
+		try {
+			index.toJSON(path);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public String toString() {
+		lock.lockReadOnly();
+		try {
+			return index.toString();
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public boolean contains(String word) {
+		lock.lockReadOnly();
+		try {
+			return index.contains(word);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public boolean contains(String word, String location) throws NullPointerException {
+		lock.lockReadOnly();
+		try {
+			return index.contains(word, location);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public boolean contains(String word, String location, int position) throws NullPointerException {
+		lock.lockReadOnly();
+		try {
+			return index.contains(word, location, position);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public boolean hasPositions() {
+		return true;
+	}
+
+	@Override
+	public int getSize() {
+		lock.lockReadOnly();
+		try {
+			return index.getSize();
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public ArrayList<Results> exactSearch(Collection<String> queryWords) {
+		lock.lockReadOnly();
+		try {
+			return index.exactSearch(queryWords);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public ArrayList<Results> partialSearch(Collection<String> queryWords) {
+		lock.lockReadOnly();
+		try {
+			return index.partialSearch(queryWords);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public ArrayList<Results> searchIndex(Collection<String> queryWords, boolean exactSearch, int limit) {
+		lock.lockReadOnly();
+		try {
+			return index.searchIndex(queryWords, exactSearch, limit);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public ArrayList<Results> searchIndex(Collection<String> queryWords, boolean exactSearch, int limit,
+			QueryBudget budget) {
+		lock.lockReadOnly();
+		try {
+			return index.searchIndex(queryWords, exactSearch, limit, budget);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Lists the snapshots in the directory, oldest first
+	 *
+	 * @param directory where the snapshots are
+	 * @return the sorted snapshots
+	 * @throws IOException
+	 */
+	private static ArrayList<Path> snapshots(Path directory) throws IOException {
+		ArrayList<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+				SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+			for (Path file : stream) {
+				files.add(file);
+			}
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	/**
+	 * Gets the last sequence number included in a snapshot from its name
+	 *
+	 * @param snapshot the snapshot file
+	 * @return the last sequence number in the snapshot
+	 */
+	private static long sequenceOf(Path snapshot) {
+		String name = snapshot.getFileName().toString();
+		return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+	}
+}
@@ -4,6 +4,12 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
@@ -14,6 +20,11 @@ import opennlp.tools.stemmer.snowball.SnowballStemmer;
  *         file at the end.
  */
 public class FileReader {
+	/**
+	 * The endings that count as a text file.
+	 */
+	public static final List<String> TEXT_EXTENSIONS = Collections.unmodifiableList(Arrays.asList("txt", "text"));
+
 	/**
 	 * Checks if the filepath is a text file or not.
 	 * 
@@ -21,8 +32,24 @@ public class FileReader {
 	 * @return true if it is a text file or false if it is a directory.
 	 */
 	public static boolean isTextFile(Path path) {
+		return hasExtension(path, TEXT_EXTENSIONS);
+	}
+
+	/**
+	 * Checks if the filepath ends with one of the given extensions, ignoring case.
+	 * 
+	 * @param path       the filepath to check
+	 * @param extensions the lower case endings to accept
+	 * @return true if the filepath ends with any of the extensions
+	 */
+	public static boolean hasExtension(Path path, Collection<String> extensions) {
 		String filepath = path.toString().toLowerCase();
-		return filepath.endsWith("txt") || filepath.endsWith("text");
+		for (String extension : extensions) {
+			if (filepath.endsWith(extension)) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -32,7 +59,7 @@ public class FileReader {
 	 * @param index The invertedindex to add words in.
 	 * @throws IOException
 	 */
-	public static void readFiles(Path path, InvertedIndex index) throws IOException {
+	public static void readFiles(Path path, InvertedIndexInterface index) throws IOException {
 		if (Files.isDirectory(path)) {
 			try (DirectoryStream<Path> files = Files.newDirectoryStream(path)) {
 				for (Path file : files) {
@@ -46,21 +73,65 @@ public class FileReader {
 
 	/**
 	 * This method reads the text file and stems the word and adds it to the
-	 * invertedIndex
+	 * invertedIndex. The whole file is grouped by word first and then added to the
+	 * index in one call.
 	 * 
 	 * @param path the text file to read
 	 */
-	public static void readFile(Path path, InvertedIndex index) throws IOException {
-		int postion = 1;
-		String filepath = path.toString();
+	public static void readFile(Path path, InvertedIndexInterface index) throws IOException {
+		index.addDocument(path.toString(), readDocument(path));
+	}
+
+	/**
+	 * This method brings the index up to date with a file that changed. A text
+	 * file that still exists replaces the old version in one call, and anything
+	 * else is removed from the index.
+	 * 
+	 * @param path  the file that changed
+	 * @param index The invertedindex to update
+	 * @return true if the index changed
+	 * @throws IOException
+	 */
+	public static boolean updateFile(Path path, InvertedIndexInterface index) throws IOException {
+		if (Files.isRegularFile(path) && isTextFile(path)) {
+			return index.replaceDocument(path.toString(), readDocument(path));
+		}
+		return index.removeDocument(path.toString());
+	}
+
+	/**
+	 * This method reads the text file and stems the words, grouping the positions
+	 * of every word together without touching the index.
+	 * 
+	 * @param path the text file to read
+	 * @return the stemmed words mapped to the positions they were found
+	 * @throws IOException
+	 */
+	public static TreeMap<String, TreeSet<Integer>> readDocument(Path path) throws IOException {
 		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
-			String line = null;
-			while ((line = reader.readLine()) != null) {
-				SnowballStemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
-				for (String token : TextFileStemmer.stemLine(line, stemmer)) {
-					index.add(token, postion++, filepath);
-				}
+			return readDocument(reader);
+		}
+	}
+
+	/**
+	 * Stems the words of text that is not in a file, the same way
+	 * {@link #readDocument(Path)} does for a file.
+	 * 
+	 * @param reader the text to read
+	 * @return the stemmed words mapped to the positions they were found
+	 * @throws IOException
+	 */
+	public static TreeMap<String, TreeSet<Integer>> readDocument(BufferedReader reader) throws IOException {
+		TreeMap<String, TreeSet<Integer>> document = new TreeMap<>();
+		int postion = 1;
+		String line = null;
+		while ((line = reader.readLine()) != null) {
+			SnowballStemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+			for (String token : TextFileStemmer.stemLine(line, stemmer)) {
+				document.putIfAbsent(token, new TreeSet<>());
+				document.get(token).add(postion++);
 			}
 		}
+		return document;
 	}
 }
\ No newline at end of file
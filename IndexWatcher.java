@@ -0,0 +1,325 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keeps an index up to date with a directory while the program runs. Every
+ * directory under the root that the {@link DirectoryCrawler} would walk into is
+ * watched, only the files it would accept are read, and the events that come in close
+ * together are collected into one batch so a file written in many small pieces
+ * is only read once. Each changed file is then replaced in the index in one
+ * call with {@link FileReader#updateFile(Path, InvertedIndexInterface)}, so a search
+ * never sees half of a file.
+ *
+ * The watcher applies every batch on its own thread and then hands the batch
+ * to a listener, so an index without locks should only be searched from the
+ * listener. Indexes that lock, like {@link SegmentedInvertedIndex} or
+ * {@link DurableInvertedIndex}, can be searched from anywhere at any time.
+ *
+ * @author SirIan
+ *
+ */
+public class IndexWatcher implements Closeable {
+
+	/**
+	 * How many milliseconds without a new event end a batch by default.
+	 */
+	public static final long DEFAULT_QUIET_MILLIS = 200;
+
+	private final Path root;
+	private final InvertedIndexInterface index;
+	private final DirectoryCrawler crawler;
+	private final long quietMillis;
+	private final WatchService watcher;
+	private final HashMap<WatchKey, Path> directories;
+	private final HashSet<Path> watched;
+	private final HashSet<Path> files;
+
+	private long batches;
+	private long updated;
+	private long totalLagNanos;
+	private long maxLagNanos;
+
+	/**
+	 * Starts watching every directory under the root for text files. The files
+	 * already under the root are expected to be in the index.
+	 *
+	 * @param root        the directory or file the index was built from
+	 * @param index       the index to keep up to date
+	 * @param quietMillis how many milliseconds without a new event end a batch
+	 * @throws IOException
+	 */
+	public IndexWatcher(Path root, InvertedIndexInterface index, long quietMillis) throws IOException {
+		this(root, index, new DirectoryCrawler(), quietMillis);
+	}
+
+	/**
+	 * Starts watching the directories under the root that the crawler walks into,
+	 * for the files it accepts. The files the crawler found under the root are
+	 * expected to be in the index.
+	 *
+	 * @param root        the directory or file the index was built from
+	 * @param index       the index to keep up to date
+	 * @param crawler     the crawler the index was built with, for its filters
+	 * @param quietMillis how many milliseconds without a new event end a batch
+	 * @throws IOException
+	 */
+	public IndexWatcher(Path root, InvertedIndexInterface index, DirectoryCrawler crawler, long quietMillis)
+			throws IOException {
+		this.root = root;
+		this.index = index;
+		this.crawler = crawler;
+		this.quietMillis = quietMillis;
+		this.watcher = FileSystems.getDefault().newWatchService();
+		this.directories = new HashMap<>();
+		this.watched = new HashSet<>();
+		this.files = new HashSet<>();
+		register(Files.isDirectory(root) ? root : root.getParent(), false);
+	}
+
+	/**
+	 * Watches a directory and every directory under it the crawler walks into,
+	 * remembering the files in them it accepts
+	 *
+	 * @param directory the directory to watch
+	 * @param read      true to read the files into the index too, for a
+	 *                  directory that was just created
+	 * @throws IOException
+	 */
+	private void register(Path directory, boolean read) throws IOException {
+		WatchKey key = directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+		directories.put(key, directory);
+		watched.add(directory);
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for (Path path : stream) {
+				if (Files.isDirectory(path)) {
+					if (descends(path)) {
+						register(path, read);
+					}
+				} else if (watches(path)) {
+					files.add(path);
+					if (read) {
+						FileReader.updateFile(path, index);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if a file belongs in the index
+	 *
+	 * @param path the file to check
+	 * @return true if the file is the root or under it, no deeper than the crawler
+	 *         looks, and the crawler accepts it
+	 */
+	private boolean watches(Path path) {
+		if (!path.equals(root) && (!path.startsWith(root) || depth(path) > crawler.getMaxDepth())) {
+			return false;
+		}
+		return crawler.accept(path);
+	}
+
+	/**
+	 * Checks if a directory should be watched
+	 *
+	 * @param directory the directory to check
+	 * @return true if the directory is under the root and the crawler walks into it
+	 */
+	private boolean descends(Path directory) {
+		return directory.startsWith(root) && !directory.equals(root) && depth(directory) < crawler.getMaxDepth();
+	}
+
+	/**
+	 * Gets how deep a path is under the root
+	 *
+	 * @param path a path under the root
+	 * @return the depth of the path, where the entries directly inside the root are
+	 *         at depth 1
+	 */
+	private int depth(Path path) {
+		return root.relativize(path).getNameCount();
+	}
+
+	/**
+	 * Waits for changes and applies them to the index one batch at a time, until
+	 * the watcher is closed or the thread is interrupted.
+	 *
+	 * @param listener what to do after each batch, given how many files changed
+	 */
+	public void watch(Consumer<Integer> listener) {
+		try {
+			while (true) {
+				WatchKey key = watcher.take();
+				long first = System.nanoTime();
+				LinkedHashMap<Path, Boolean> batch = new LinkedHashMap<>();
+				boolean overflow = false;
+				while (key != null) {
+					overflow |= collect(key, batch);
+					key = watcher.poll(quietMillis, TimeUnit.MILLISECONDS);
+				}
+
+				int changed = overflow ? rescan() : apply(batch);
+				if (changed > 0) {
+					listener.accept(changed);
+					long lag = System.nanoTime() - first;
+					synchronized (this) {
+						batches++;
+						updated += changed;
+						totalLagNanos += lag;
+						maxLagNanos = Math.max(maxLagNanos, lag);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			return;
+		}
+	}
+
+	/**
+	 * Adds the events of a key to the batch. Only the last kind of event for each
+	 * path is kept, since the file is read again either way.
+	 *
+	 * @param key   the key with events
+	 * @param batch the paths that changed, mapped to true if they were deleted
+	 * @return true if events were lost and everything has to be checked again
+	 */
+	private boolean collect(WatchKey key, LinkedHashMap<Path, Boolean> batch) {
+		boolean overflow = false;
+		Path directory = directories.get(key);
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				overflow = true;
+			} else if (directory != null) {
+				Path path = directory.resolve((Path) event.context());
+				batch.remove(path);
+				batch.put(path, event.kind() == StandardWatchEventKinds.ENTRY_DELETE);
+			}
+		}
+		if (!key.reset() && directory != null) {
+			directories.remove(key);
+			watched.remove(directory);
+		}
+		return overflow;
+	}
+
+	/**
+	 * Applies a batch of changes to the index
+	 *
+	 * @param batch the paths that changed, mapped to true if they were deleted
+	 * @return how many files changed in the index
+	 */
+	private int apply(LinkedHashMap<Path, Boolean> batch) {
+		int changed = 0;
+		for (Map.Entry<Path, Boolean> entry : batch.entrySet()) {
+			Path path = entry.getKey();
+			try {
+				if (!entry.getValue() && Files.isDirectory(path)) {
+					if (!descends(path) || watched.contains(path)) {
+						continue;
+					}
+					int before = files.size();
+					register(path, true);
+					changed += files.size() - before;
+				} else if (entry.getValue() || !Files.exists(path)) {
+					changed += remove(path);
+				} else if (watches(path)) {
+					files.add(path);
+					if (FileReader.updateFile(path, index)) {
+						changed++;
+					}
+				} else if (files.contains(path)) {
+					changed += remove(path);
+				}
+			} catch (IOException e) {
+				System.err.println("Unable to update the index with: " + path);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Removes a deleted file, or every file under a deleted directory, from the
+	 * index
+	 *
+	 * @param path the file or directory that was deleted
+	 * @return how many files were removed
+	 */
+	private int remove(Path path) {
+		ArrayList<Path> removed = new ArrayList<>();
+		for (Path file : files) {
+			if (file.startsWith(path)) {
+				removed.add(file);
+			}
+		}
+		for (Path file : removed) {
+			files.remove(file);
+			index.removeDocument(file.toString());
+		}
+		return removed.size();
+	}
+
+	/**
+	 * Checks every file again after events were lost
+	 *
+	 * @return how many files changed in the index
+	 */
+	private int rescan() {
+		LinkedHashMap<Path, Boolean> batch = new LinkedHashMap<>();
+		for (Path file : files) {
+			batch.put(file, !Files.exists(file));
+		}
+		for (Path directory : new ArrayList<>(directories.values())) {
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+				for (Path path : stream) {
+					if (Files.isDirectory(path) ? descends(path) && !watched.contains(path)
+							: watches(path)) {
+						batch.putIfAbsent(path, false);
+					}
+				}
+			} catch (IOException e) {
+				batch.put(directory, true);
+			}
+		}
+		return apply(batch);
+	}
+
+	/**
+	 * Returns how many batches were applied and how long after the first change
+	 * of each batch the listener was done with it
+	 *
+	 * @return the freshness lag so far
+	 */
+	@Override
+	public synchronized String toString() {
+		return batches + " batches, " + updated + " files, average lag "
+				+ (batches == 0 ? 0 : totalLagNanos / batches / 1000000) + " ms, max lag " + maxLagNanos / 1000000
+				+ " ms";
+	}
+
+	/**
+	 * Stops watching, which ends {@link #watch(Consumer)}.
+	 */
+	@Override
+	public void close() throws IOException {
+		watcher.close();
+	}
+}
@@ -1,33 +1,216 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.SortedMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Data structure to store strings and their positions.
  */
-public class InvertedIndex {
+public class InvertedIndex implements InvertedIndexInterface {
 
 	/**
-	 * Stores a mapping of words to the positions the words were found.
+	 * Stores a mapping of words to the ids of the paths and the positions the
+	 * words were found.
 	 */
-	private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> index;
-	private final TreeMap<String, Integer> totalwords;
+	private final TreeMap<String, TreeMap<Integer, TreeSet<Integer>>> index;
+
+	/**
+	 * Gives every path an id, and keeps the number of words in each path by id.
+	 * A path with no words is not in the index.
+	 */
+	private final DocumentRegistry documents;
+	private int[] totalwords;
+
+	/**
+	 * The number of words the word filter is sized for when -bloom is given
+	 * without -words.
+	 */
+	public static final int DEFAULT_EXPECTED_WORDS = 1 << 16;
+
+	/**
+	 * The false positive rate of the word filter unless another one is given.
+	 */
+	public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+	/**
+	 * Answers most lookups of words that are not in the index without searching
+	 * the index. The filter is only built by the first exact lookup, sized for
+	 * twice the words in the index at that time, and dropped again once the index
+	 * has more words than it was sized for, so an index that is never searched
+	 * exactly never pays for one.
+	 */
+	private volatile BloomFilter filter;
+	private int filterWords;
+	private final int expectedWords;
+	private final double falsePositiveRate;
+
+	/**
+	 * How many paths a prefix has to expand to before its search is split up.
+	 */
+	public static final int DEFAULT_SPLIT_THRESHOLD = 1 << 14;
+
+	private int splitThreshold;
+
+	/**
+	 * The first bytes of a file written by {@link #save(Path)}, so any other file
+	 * is turned away before it is read.
+	 */
+	private static final int MAGIC = 0x49494458;
+
+	/**
+	 * The version of the saved file, raised whenever the format changes.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * The highest score each word can add to a single path, used to skip paths
+	 * that can not make it into the top results. The bound of a word is raised
+	 * whenever its count in a path goes up, and is never lowered, since a path
+	 * only ever gets more words or is removed.
+	 */
+	private final HashMap<String, Double> maxScores;
+	private final MaxScoreEvaluator evaluator;
 
 	/**
 	 * Initializes the index.
 	 */
 	public InvertedIndex() {
+		this(0, DEFAULT_FALSE_POSITIVE_RATE);
+	}
+
+	/**
+	 * Initializes the index with a word filter of at least the given size. The
+	 * filter is built again twice as big whenever more words than it was sized
+	 * for are added, so it stays near the false positive rate.
+	 *
+	 * @param expectedWords     the fewest words the filter is sized for
+	 * @param falsePositiveRate the chance a missing word gets past the filter
+	 */
+	public InvertedIndex(int expectedWords, double falsePositiveRate) {
+		this(expectedWords, falsePositiveRate, new DocumentRegistry());
+	}
+
+	/**
+	 * Initializes an index that gives its paths ids from a registry shared with
+	 * other indexes, so the same path has the same id in all of them. The
+	 * registry is not thread safe, so the indexes have to be changed one at a
+	 * time.
+	 *
+	 * @param documents the registry to get the ids of paths from
+	 */
+	InvertedIndex(DocumentRegistry documents) {
+		this(0, DEFAULT_FALSE_POSITIVE_RATE, documents);
+	}
+
+	/**
+	 * Initializes the index with a word filter of the given size and a registry
+	 * for the paths.
+	 *
+	 * @param expectedWords     the fewest words the filter is sized for
+	 * @param falsePositiveRate the chance a missing word gets past the filter
+	 * @param documents         the registry to get the ids of paths from
+	 */
+	private InvertedIndex(int expectedWords, double falsePositiveRate, DocumentRegistry documents) {
 		this.index = new TreeMap<>();
-		this.totalwords = new TreeMap<>();
+		this.documents = documents;
+		this.totalwords = new int[16];
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("The false positive rate must be between 0 and 1: " + falsePositiveRate);
+		}
+		this.expectedWords = expectedWords;
+		this.falsePositiveRate = falsePositiveRate;
+		this.filter = null;
+		this.filterWords = 0;
+		this.splitThreshold = DEFAULT_SPLIT_THRESHOLD;
+		this.maxScores = new HashMap<>();
+		this.evaluator = new MaxScoreEvaluator(this);
+	}
+
+	/**
+	 * Sets how many paths a prefix has to expand to before the words it matches
+	 * are split into ranges and searched on the fork join pool. Smaller prefixes
+	 * are searched on the calling thread.
+	 *
+	 * @param splitThreshold the number of paths that makes splitting worth it
+	 */
+	public void setSplitThreshold(int splitThreshold) {
+		this.splitThreshold = Math.max(1, splitThreshold);
+	}
+
+	/**
+	 * Gets the paths and positions of a word, adding the word to the index and the
+	 * filter if it is new.
+	 *
+	 * @param word the word to look up
+	 * @return the paths and positions of the word
+	 */
+	private TreeMap<Integer, TreeSet<Integer>> getOrAddWord(String word) {
+		TreeMap<Integer, TreeSet<Integer>> pathMap = index.get(word);
+		if (pathMap == null) {
+			pathMap = new TreeMap<>();
+			index.put(word, pathMap);
+			BloomFilter current = filter;
+			if (current != null) {
+				if (index.size() > filterWords) {
+					filter = null;
+				} else {
+					current.add(word);
+				}
+			}
+		}
+		return pathMap;
+	}
+
+	/**
+	 * Checks the word filter, building it first if there is none yet. Searches
+	 * that run at the same time may each build one, which only costs time, since
+	 * the words do not change while the index is searched.
+	 *
+	 * @param word the word to look up
+	 * @return false if the word is surely not in the index
+	 */
+	private boolean mightContain(String word) {
+		BloomFilter current = filter;
+		if (current == null) {
+			int words = Math.max(Math.max(expectedWords, index.size() * 2), 64);
+			current = new BloomFilter(words, falsePositiveRate);
+			for (String key : index.keySet()) {
+				current.add(key);
+			}
+			filterWords = words;
+			filter = current;
+		}
+		return current.mightContain(word);
+	}
+
+	/**
+	 * Gets the id of a path, giving it the next id if it is new
+	 *
+	 * @param path the path to look up
+	 * @return the id of the path
+	 */
+	private int getOrAddDocument(String path) {
+		int id = documents.getOrAdd(path);
+		if (id >= totalwords.length) {
+			totalwords = Arrays.copyOf(totalwords, Math.max(totalwords.length * 2, id + 1));
+		}
+		return id;
 	}
 
 	/**
@@ -39,16 +222,41 @@ public class InvertedIndex {
 	 * @return true if this index did not already contain this word and position
 	 */
 	public boolean add(String word, int position, String path) {
-		index.putIfAbsent(word, new TreeMap<>());
-		index.get(word).putIfAbsent(path, new TreeSet<>());
-		boolean result = index.get(word).get(path).add(position);
+		int id = getOrAddDocument(path);
+		TreeMap<Integer, TreeSet<Integer>> pathMap = getOrAddWord(word);
+		pathMap.putIfAbsent(id, new TreeSet<>());
+		boolean result = pathMap.get(id).add(position);
 
 		if (result) {
-			totalwords.put(path, totalwords.getOrDefault(path, 0) + 1);
+			totalwords[id]++;
+			raiseMaxScore(word, pathMap.get(id).size(), id);
 		}
 		return result;
 	}
 
+	/**
+	 * Adds the positions of a word in a path that already has an id, for indexes
+	 * that share a registry.
+	 *
+	 * @param word      the word to add
+	 * @param id        the id of the path in the shared registry
+	 * @param positions the positions the word was found
+	 */
+	void add(String word, int id, int[] positions) {
+		if (id >= totalwords.length) {
+			totalwords = Arrays.copyOf(totalwords, Math.max(totalwords.length * 2, id + 1));
+		}
+		TreeMap<Integer, TreeSet<Integer>> pathMap = getOrAddWord(word);
+		pathMap.putIfAbsent(id, new TreeSet<>());
+		TreeSet<Integer> found = pathMap.get(id);
+		for (int position : positions) {
+			if (found.add(position)) {
+				totalwords[id]++;
+			}
+		}
+		raiseMaxScore(word, found.size(), id);
+	}
+
 	/**
 	 * Adds the array of words at once, assuming the first word in the array is at
 	 * position 1.
@@ -83,6 +291,319 @@ public class InvertedIndex {
 		return changed;
 	}
 
+	/**
+	 * Adds a whole document at once. The positions are expected to already be
+	 * grouped by word, so each word only needs one lookup and one bulk insert
+	 * instead of one insert per token, and the word count for the path is only
+	 * updated once.
+	 *
+	 * @param path     The file the words were from
+	 * @param document the words in the file mapped to the positions they were
+	 *                 found
+	 * @return true if this index is changed as a result of the call (i.e. if one or
+	 *         more words or positions were added to the index)
+	 */
+	public boolean addDocument(String path, Map<String, ? extends Collection<Integer>> document) {
+		return addDocumentHelper(path, document);
+	}
+
+	/**
+	 * The add helper for both adding and replacing a document, so replacing does
+	 * not go through methods a subclass may have changed.
+	 *
+	 * @param path     The file the words were from
+	 * @param document the words in the file mapped to the positions they were
+	 *                 found
+	 * @return true if this index is changed as a result of the call
+	 */
+	private boolean addDocumentHelper(String path, Map<String, ? extends Collection<Integer>> document) {
+		int id = getOrAddDocument(path);
+		int added = 0;
+		for (Map.Entry<String, ? extends Collection<Integer>> entry : document.entrySet()) {
+			if (entry.getValue().isEmpty()) {
+				continue;
+			}
+			TreeMap<Integer, TreeSet<Integer>> pathMap = getOrAddWord(entry.getKey());
+			TreeSet<Integer> positions = pathMap.get(id);
+			if (positions == null) {
+				positions = new TreeSet<>(entry.getValue());
+				pathMap.put(id, positions);
+				added += positions.size();
+			} else {
+				int before = positions.size();
+				positions.addAll(entry.getValue());
+				added += positions.size() - before;
+			}
+		}
+
+		if (added > 0) {
+			totalwords[id] += added;
+			for (Map.Entry<String, ? extends Collection<Integer>> entry : document.entrySet()) {
+				if (!entry.getValue().isEmpty()) {
+					raiseMaxScore(entry.getKey(), index.get(entry.getKey()).get(id).size(), id);
+				}
+			}
+		}
+		return added > 0;
+	}
+
+	/**
+	 * Removes every word and position of a path from the index.
+	 *
+	 * @param path the file to remove
+	 * @return true if the path was in the index
+	 */
+	public boolean removeDocument(String path) {
+		return removeDocumentHelper(path);
+	}
+
+	/**
+	 * The remove helper for both removing and replacing a document
+	 *
+	 * @param path the file to remove
+	 * @return true if the path was in the index
+	 */
+	private boolean removeDocumentHelper(String path) {
+		int id = documents.getId(path);
+		if (id < 0 || getTotal(id) == 0) {
+			return false;
+		}
+		totalwords[id] = 0;
+		Iterator<Map.Entry<String, TreeMap<Integer, TreeSet<Integer>>>> words = index.entrySet().iterator();
+		while (words.hasNext()) {
+			Map.Entry<String, TreeMap<Integer, TreeSet<Integer>>> word = words.next();
+			if (word.getValue().remove(id) != null && word.getValue().isEmpty()) {
+				maxScores.remove(word.getKey());
+				words.remove();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Replaces everything the index has for a path with a new version of the
+	 * document.
+	 *
+	 * @param path     The file the words were from
+	 * @param document the words in the file mapped to the positions they were
+	 *                 found
+	 * @return true if this index is changed as a result of the call
+	 */
+	public boolean replaceDocument(String path, Map<String, ? extends Collection<Integer>> document) {
+		boolean removed = removeDocumentHelper(path);
+		return addDocumentHelper(path, document) || removed;
+	}
+
+	/**
+	 * Saves the index to a binary file that {@link #load(Path)} can read back much
+	 * faster than the files can be read again. The paths are written once and
+	 * the positions are written as the gap from the last position. Paths with no
+	 * words and empty position sets are left out. The file starts with a magic
+	 * number and a version, so it is never read back as something else.
+	 *
+	 * @param path the file to write to
+	 * @throws IOException
+	 */
+	public void save(Path path) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			int[] ids = new int[totalwords.length];
+			int live = 0;
+			for (int id = 0; id < ids.length; id++) {
+				ids[id] = totalwords[id] > 0 ? live++ : -1;
+			}
+			out.writeInt(live);
+			for (int id = 0; id < ids.length; id++) {
+				if (totalwords[id] > 0) {
+					out.writeUTF(documents.getPath(id));
+					out.writeInt(totalwords[id]);
+				}
+			}
+
+			int words = 0;
+			for (TreeMap<Integer, TreeSet<Integer>> pathMap : index.values()) {
+				if (countSaved(pathMap, ids) > 0) {
+					words++;
+				}
+			}
+			out.writeInt(words);
+			for (Map.Entry<String, TreeMap<Integer, TreeSet<Integer>>> word : index.entrySet()) {
+				int locations = countSaved(word.getValue(), ids);
+				if (locations == 0) {
+					continue;
+				}
+				out.writeUTF(word.getKey());
+				out.writeInt(locations);
+				for (Map.Entry<Integer, TreeSet<Integer>> location : word.getValue().entrySet()) {
+					if (ids[location.getKey()] < 0 || location.getValue().isEmpty()) {
+						continue;
+					}
+					out.writeInt(ids[location.getKey()]);
+					out.writeInt(location.getValue().size());
+					int last = 0;
+					for (int position : location.getValue()) {
+						out.writeInt(position - last);
+						last = position;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts the locations of a word that {@link #save(Path)} writes
+	 * 
+	 * @param pathMap the paths and positions of the word
+	 * @param ids     the saved id of every path, or -1 for paths not saved
+	 * @return how many locations of the word are saved
+	 */
+	private static int countSaved(TreeMap<Integer, TreeSet<Integer>> pathMap, int[] ids) {
+		int count = 0;
+		for (Map.Entry<Integer, TreeSet<Integer>> location : pathMap.entrySet()) {
+			if (ids[location.getKey()] >= 0 && !location.getValue().isEmpty()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Replaces what this index has for every path in a file written by
+	 * {@link #save(Path)} with what the file has for it. The whole file is read
+	 * and checked before the index is changed, so a bad or cut short file leaves
+	 * the index as it was.
+	 *
+	 * @param path the file to read from
+	 * @throws IOException if the file can not be read or is not a whole saved
+	 *                     index
+	 */
+	public void load(Path path) throws IOException {
+		replaceAll(read(path));
+	}
+
+	/**
+	 * Reads a file written by {@link #save(Path)} into a new index. Every count in
+	 * the file is checked against the size of the file before anything is made
+	 * that big, and the words, paths and positions have to be in the order they
+	 * are saved in.
+	 *
+	 * @param path the file to read from
+	 * @return the saved index
+	 * @throws IOException if the file can not be read or is not a whole saved
+	 *                     index
+	 */
+	static InvertedIndex read(Path path) throws IOException {
+		long size = Files.size(path);
+		InvertedIndex loaded = new InvertedIndex();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			if (size < 2 * Integer.BYTES || in.readInt() != MAGIC) {
+				throw new IOException("Not a saved index: " + path);
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unable to read version " + version + " of a saved index: " + path);
+			}
+
+			int[] ids = new int[readCount(in, size, 0, "paths")];
+			int[] totals = new int[ids.length];
+			for (int i = 0; i < ids.length; i++) {
+				String document = in.readUTF();
+				if (loaded.documents.getId(document) >= 0) {
+					throw new IOException("The saved index has the path twice: " + document);
+				}
+				ids[i] = loaded.getOrAddDocument(document);
+				totals[i] = in.readInt();
+			}
+
+			int words = readCount(in, size, 0, "words");
+			String last = null;
+			for (int i = 0; i < words; i++) {
+				String word = in.readUTF();
+				if (last != null && word.compareTo(last) <= 0) {
+					throw new IOException("The saved index has the words out of order at: " + word);
+				}
+				last = word;
+				TreeMap<Integer, TreeSet<Integer>> pathMap = loaded.getOrAddWord(word);
+				int locations = readCount(in, size, 1, "locations");
+				int previous = -1;
+				for (int j = 0; j < locations; j++) {
+					int saved = in.readInt();
+					if (saved <= previous || saved >= ids.length) {
+						throw new IOException("The saved index has a bad path for the word: " + word);
+					}
+					previous = saved;
+					TreeSet<Integer> positions = new TreeSet<>();
+					int count = readCount(in, size, 1, "positions");
+					int position = 0;
+					for (int k = 0; k < count; k++) {
+						int gap = in.readInt();
+						if (gap <= 0 || gap > Integer.MAX_VALUE - position) {
+							throw new IOException("The saved index has a bad position for the word: " + word);
+						}
+						position += gap;
+						positions.add(position);
+					}
+					pathMap.put(ids[saved], positions);
+					loaded.totalwords[ids[saved]] += positions.size();
+				}
+			}
+			if (in.read() != -1) {
+				throw new IOException("The saved index has more after its last word: " + path);
+			}
+
+			for (int i = 0; i < ids.length; i++) {
+				if (loaded.totalwords[ids[i]] != totals[i]) {
+					throw new IOException("The saved index has the wrong word count for: "
+							+ loaded.documents.getPath(ids[i]));
+				}
+			}
+		}
+		for (Map.Entry<String, TreeMap<Integer, TreeSet<Integer>>> word : loaded.index.entrySet()) {
+			for (Map.Entry<Integer, TreeSet<Integer>> location : word.getValue().entrySet()) {
+				loaded.raiseMaxScore(word.getKey(), location.getValue().size(), location.getKey());
+			}
+		}
+		return loaded;
+	}
+
+	/**
+	 * Reads a count from a saved index, making sure it is not too small and that
+	 * the file is big enough to hold that many of what is counted
+	 *
+	 * @param in      the stream to read from
+	 * @param size    the size of the file
+	 * @param minimum the smallest count the file can have
+	 * @param what    what is counted, for the error
+	 * @return the count
+	 * @throws IOException if the count can not be right
+	 */
+	private static int readCount(DataInputStream in, long size, int minimum, String what) throws IOException {
+		int count = in.readInt();
+		if (count < minimum || count > size / Integer.BYTES) {
+			throw new IOException("The saved index has a bad number of " + what + ": " + count);
+		}
+		return count;
+	}
+
+	/**
+	 * Gets every document in the index as its words mapped to their positions, so
+	 * the documents can be added to another kind of index. The position sets are
+	 * not copied.
+	 *
+	 * @return the paths mapped to the words and positions in them
+	 */
+	TreeMap<String, TreeMap<String, TreeSet<Integer>>> getDocuments() {
+		TreeMap<String, TreeMap<String, TreeSet<Integer>>> named = new TreeMap<>();
+		for (Map.Entry<String, TreeMap<Integer, TreeSet<Integer>>> word : index.entrySet()) {
+			for (Map.Entry<Integer, TreeSet<Integer>> location : word.getValue().entrySet()) {
+				named.computeIfAbsent(documents.getPath(location.getKey()), path -> new TreeMap<>())
+						.put(word.getKey(), location.getValue());
+			}
+		}
+		return named;
+	}
+
 	/**
 	 * This will write the locations in a JSON format to the specific path
 	 * 
@@ -90,8 +611,14 @@ public class InvertedIndex {
 	 * @throws IOException
 	 */
 	public void toJsonAsLocation(Path path) throws IOException {
+		TreeMap<String, Integer> locations = new TreeMap<>();
+		for (int id = 0; id < totalwords.length; id++) {
+			if (totalwords[id] > 0) {
+				locations.put(documents.getPath(id), totalwords[id]);
+			}
+		}
 		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
-			TreeJSONWriter.writeLocations(totalwords, writer, 0);
+			TreeJSONWriter.writeLocations(locations, writer, 0);
 		}
 	}
 
@@ -103,7 +630,7 @@ public class InvertedIndex {
 	 */
 	public void toJSON(Path path) throws IOException {
 		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
-			TreeJSONWriter.asDoubleNestedObject(index, writer, 0);
+			TreeJSONWriter.asDoubleNestedObject(withPaths(), writer, 0);
 		}
 	}
 
@@ -112,7 +639,30 @@ public class InvertedIndex {
 	 */
 	@Override
 	public String toString() {
-		return this.index.toString();
+		return withPaths().toString();
+	}
+
+	/**
+	 * Builds a view of the index keyed on the paths instead of their ids, sorted
+	 * by path, for writing it out. The position sets are shared, not copied.
+	 *
+	 * @return the words mapped to the paths and positions they were found
+	 */
+	private TreeMap<String, TreeMap<String, TreeSet<Integer>>> withPaths() {
+		String[] paths = new String[documents.size()];
+		TreeMap<String, TreeMap<String, TreeSet<Integer>>> named = new TreeMap<>();
+		for (Map.Entry<String, TreeMap<Integer, TreeSet<Integer>>> word : index.entrySet()) {
+			TreeMap<String, TreeSet<Integer>> locations = new TreeMap<>();
+			for (Map.Entry<Integer, TreeSet<Integer>> location : word.getValue().entrySet()) {
+				int id = location.getKey();
+				if (paths[id] == null) {
+					paths[id] = documents.getPath(id);
+				}
+				locations.put(paths[id], location.getValue());
+			}
+			named.put(word.getKey(), locations);
+		}
+		return named;
 	}
 
 	/**
@@ -122,7 +672,7 @@ public class InvertedIndex {
 	 * @return true or false
 	 */
 	public boolean contains(String word) {
-		return index.containsKey(word);
+		return mightContain(word) && index.containsKey(word);
 	}
 
 	/**
@@ -134,7 +684,7 @@ public class InvertedIndex {
 	 * @throws NullPointerException
 	 */
 	public boolean contains(String word, String location) throws NullPointerException {
-		return contains(word) == true ? null : index.get(word).containsKey(location);
+		return contains(word) == true ? null : index.get(word).containsKey(documents.getId(location));
 	}
 
 	/**
@@ -147,7 +697,28 @@ public class InvertedIndex {
 	 * @throws NullPointerException
 	 */
 	public boolean contains(String word, String location, int position) throws NullPointerException {
-		return contains(word, location) == true ? null : index.get(word).get(location).contains(position);
+		return contains(word, location) == true ? null
+				: index.get(word).get(documents.getId(location)).contains(position);
+	}
+
+	/**
+	 * Checks if this index keeps the positions of the words, which are needed to
+	 * write the index as JSON.
+	 * 
+	 * @return true if the positions are kept
+	 */
+	public boolean hasPositions() {
+		return true;
+	}
+
+	/**
+	 * Gets how much memory the word filter uses
+	 * 
+	 * @return the number of bits in the word filter, or 0 if it is not built
+	 */
+	public long getFilterBits() {
+		BloomFilter current = filter;
+		return current == null ? 0 : current.getBits();
 	}
 
 	/**
@@ -183,95 +754,454 @@ public class InvertedIndex {
 	 * @return
 	 */
 	public ArrayList<Results> exactSearch(Collection<String> queryWords) {
-		HashMap<String, Results> lookup = new HashMap<>();
+		HashMap<Integer, Results> lookup = new HashMap<>();
 		ArrayList<Results> results = new ArrayList<>();
 		for (String query : queryWords) {
-			if (index.containsKey(query)) {
-				searchHelper(query, results, lookup);
+			if (mightContain(query) && index.containsKey(query)) {
+				searchHelper(index.get(query), results, lookup);
 			}
 		}
 		Collections.sort(results);
 		return results;
 	}
 
+	/**
+	 * Searches for only the best results, skipping the paths that can not make it
+	 * into them. Gives the same results as the first {@code limit} results of
+	 * {@link #searchIndex(Collection, boolean)}.
+	 * 
+	 * @param queryWords  the words to look for
+	 * @param exactSearch a boolean to see if the exact flag is passed in
+	 * @param limit       how many results to keep, or 0 to keep all of them
+	 * @return an ArrayList of the best results for the words
+	 */
+	public ArrayList<Results> searchIndex(Collection<String> queryWords, boolean exactSearch, int limit) {
+		if (limit <= 0) {
+			return searchIndex(queryWords, exactSearch);
+		}
+		return evaluator.search(queryWords, exactSearch, limit);
+	}
+
+	/**
+	 * Searches for the best results without going over the budget. Once the query
+	 * has looked at too many words or ran out of time, the rest of the words are
+	 * skipped, and once it has collected too many paths, new paths are ignored.
+	 * The budget is marked as truncated when that happens.
+	 *
+	 * @param queryWords  the words to look for
+	 * @param exactSearch a boolean to see if the exact flag is passed in
+	 * @param limit       how many results to keep, or 0 to keep all of them
+	 * @param budget      the started budget of the query
+	 * @return an ArrayList of the best results found within the budget
+	 */
+	public ArrayList<Results> searchIndex(Collection<String> queryWords, boolean exactSearch, int limit,
+			QueryBudget budget) {
+		if (budget.isUnlimited()) {
+			return searchIndex(queryWords, exactSearch, limit);
+		}
+		HashMap<Integer, Results> lookup = new HashMap<>();
+		ArrayList<Results> results = new ArrayList<>();
+		for (String query : queryWords) {
+			if (exactSearch) {
+				if (mightContain(query) && index.containsKey(query)
+						&& !searchHelper(index.get(query), results, lookup, budget)) {
+					break;
+				}
+			} else if (!partialSearch(query, results, lookup, budget)) {
+				break;
+			}
+		}
+		return QueryBudget.top(results, limit);
+	}
+
+	/**
+	 * Searches the words that start with the query, walking the index only as far
+	 * as the budget allows
+	 *
+	 * @param query   the prefix to look for
+	 * @param results the results collected so far
+	 * @param lookup  the results collected so far by path id
+	 * @param budget  the started budget of the query
+	 * @return false if the budget ran out of words or time
+	 */
+	private boolean partialSearch(String query, ArrayList<Results> results, HashMap<Integer, Results> lookup,
+			QueryBudget budget) {
+		for (Map.Entry<String, TreeMap<Integer, TreeSet<Integer>>> entry : index.tailMap(query).entrySet()) {
+			if (!entry.getKey().startsWith(query)) {
+				break;
+			}
+			if (!searchHelper(entry.getValue(), results, lookup, budget)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the paths of one word to the results, if the budget allows the word,
+	 * and ignoring the new paths the budget does not allow
+	 *
+	 * @param pathMap the path ids and positions of the word
+	 * @param results the results collected so far
+	 * @param lookup  the results collected so far by path id
+	 * @param budget  the started budget of the query
+	 * @return false if the budget ran out of words or time
+	 */
+	private boolean searchHelper(TreeMap<Integer, TreeSet<Integer>> pathMap, ArrayList<Results> results,
+			HashMap<Integer, Results> lookup, QueryBudget budget) {
+		if (!budget.allowTerm()) {
+			return false;
+		}
+		for (Map.Entry<Integer, TreeSet<Integer>> entry : pathMap.entrySet()) {
+			Results result = lookup.get(entry.getKey());
+			if (result != null) {
+				result.increaseCount(entry.getValue().size());
+			} else if (budget.allowDocument()) {
+				result = new Results(documents.getPath(entry.getKey()), entry.getValue().size(),
+						totalwords[entry.getKey()]);
+				lookup.put(entry.getKey(), result);
+				results.add(result);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the evaluator used for the searches with a limit, which counts how many
+	 * paths it scored and skipped.
+	 * 
+	 * @return the evaluator of this index
+	 */
+	public MaxScoreEvaluator getEvaluator() {
+		return evaluator;
+	}
+
+	/**
+	 * Gets the words in the index a search would look at, in the order the search
+	 * would look at them.
+	 * 
+	 * @param queryWords  the words to look for
+	 * @param exactSearch a boolean to see if the exact flag is passed in
+	 * @return the words in the index that match the query words
+	 */
+	ArrayList<String> matchingWords(Collection<String> queryWords, boolean exactSearch) {
+		ArrayList<String> words = new ArrayList<>();
+		for (String query : queryWords) {
+			if (exactSearch) {
+				if (mightContain(query) && index.containsKey(query)) {
+					words.add(query);
+				}
+			} else {
+				for (String word : index.tailMap(query).keySet()) {
+					if (!word.startsWith(query)) {
+						break;
+					}
+					words.add(word);
+				}
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * Gets every word in the index in sorted order without copying them
+	 * 
+	 * @return the words in the index
+	 */
+	Collection<String> getWords() {
+		return index.keySet();
+	}
+
+	/**
+	 * Gets the words in the index from a word on, in sorted order without copying
+	 * them, so a search can stop walking them whenever it needs to
+	 * 
+	 * @param from the first word to get, if it is in the index
+	 * @return the words in the index from the word on
+	 */
+	Collection<String> getWords(String from) {
+		return index.tailMap(from).keySet();
+	}
+
+	/**
+	 * Gets the ids of the paths and the positions of a word without copying them
+	 * 
+	 * @param word the word in the index
+	 * @return the path ids and positions of the word
+	 */
+	TreeMap<Integer, TreeSet<Integer>> getLocations(String word) {
+		return index.get(word);
+	}
+
+	/**
+	 * Gets the path of an id
+	 * 
+	 * @param id the id of the path
+	 * @return the path
+	 */
+	String getPath(int id) {
+		return documents.getPath(id);
+	}
+
+	/**
+	 * Gets the number of words in a path
+	 * 
+	 * @param path the path in the index
+	 * @return the number of words in the path, or 0 if it is not in the index
+	 */
+	int getTotal(String path) {
+		int id = documents.getId(path);
+		return id < 0 ? 0 : getTotal(id);
+	}
+
+	/**
+	 * Gets the number of words in a path by its id
+	 * 
+	 * @param id the id of the path
+	 * @return the number of words in the path, or 0 if it is not in the index
+	 */
+	int getTotal(int id) {
+		return id < totalwords.length ? totalwords[id] : 0;
+	}
+
+	/**
+	 * Gets the highest score the word can add to any single path. The bound is
+	 * kept up to date as the index changes, so it may be higher than the best
+	 * score left after a path was removed or got more words, but never lower.
+	 * 
+	 * @param word the word in the index
+	 * @return the highest score of the word in any path
+	 */
+	double getMaxScore(String word) {
+		return maxScores.get(word);
+	}
+
+	/**
+	 * Raises the bound of a word to its score in a path, if that is higher
+	 * 
+	 * @param word  the word in the index
+	 * @param count how many times the word is in the path
+	 * @param id    the id of the path
+	 */
+	private void raiseMaxScore(String word, int count, int id) {
+		maxScores.merge(word, (double) count / totalwords[id], Math::max);
+	}
+
 	/**
 	 * The search Helper for both exact and partical
 	 * 
-	 * @param query   The query to get from the index
+	 * @param pathMap The paths and positions of a word in the index
 	 * @param results The arrayList to add the results found from the invertedIndex
 	 * @param lookup  The hashmap to see if we have a result from before
 	 */
-	private void searchHelper(String query, ArrayList<Results> results, HashMap<String, Results> lookup) {
-		TreeMap<String, TreeSet<Integer>> pathMap = index.get(query);
-		for (String path : pathMap.keySet()) {
-			if (lookup.containsKey(path)) {
-				Results result = lookup.get(path);
-				result.increaseCount(pathMap.get(path).size());
+	private void searchHelper(TreeMap<Integer, TreeSet<Integer>> pathMap, ArrayList<Results> results,
+			HashMap<Integer, Results> lookup) {
+		for (Map.Entry<Integer, TreeSet<Integer>> entry : pathMap.entrySet()) {
+			Results result = lookup.get(entry.getKey());
+			if (result != null) {
+				result.increaseCount(entry.getValue().size());
 			} else {
-				Results new_Result = new Results(path, pathMap.get(path).size(), totalwords.get(path));
-				lookup.put(path, new_Result);
+				Results new_Result = new Results(documents.getPath(entry.getKey()), entry.getValue().size(),
+						totalwords[entry.getKey()]);
+				lookup.put(entry.getKey(), new_Result);
 				results.add(new_Result);
 			}
 		}
 	}
 
+	/**
+	 * The search Helper for the parts of a partial search that are only merged by
+	 * path, so the results are only kept in the lookup
+	 * 
+	 * @param pathMap The paths and positions of a word in the index
+	 * @param lookup  The hashmap of the results found so far by path id
+	 */
+	private void searchHelper(TreeMap<Integer, TreeSet<Integer>> pathMap, HashMap<Integer, Results> lookup) {
+		for (Map.Entry<Integer, TreeSet<Integer>> entry : pathMap.entrySet()) {
+			Results result = lookup.get(entry.getKey());
+			if (result != null) {
+				result.increaseCount(entry.getValue().size());
+			} else {
+				lookup.put(entry.getKey(), new Results(documents.getPath(entry.getKey()), entry.getValue().size(),
+						totalwords[entry.getKey()]));
+			}
+		}
+	}
+
 	/**
 	 * The partical search will go through the index and returns words that starts
-	 * with this query
+	 * with this query. The words of a prefix are searched on the calling thread
+	 * until they add up to the split threshold in paths, and only the words after
+	 * that are collected and split up on the fork join pool, so a small prefix
+	 * costs one walk of the words and nothing else.
 	 * 
-	 * @param lookup The treeMap to hold all the results
-	 * @param query  the word to look for.
+	 * @param queryWords the words to look for.
 	 */
 	public ArrayList<Results> partialSearch(Collection<String> queryWords) {
-		HashMap<String, Results> lookup = new HashMap<>();
+		HashMap<Integer, Results> lookup = new HashMap<>();
 		ArrayList<Results> results = new ArrayList<>();
 		for (String query : queryWords) {
-			SortedMap<String, TreeMap<String, TreeSet<Integer>>> headMap = index.tailMap(query);
-			for (String word : headMap.keySet()) {
-				if (word.startsWith(query)) {
-					searchHelper(word, results, lookup);
-				} else {
+			long cost = 0;
+			String[] words = null;
+			long[] costs = null;
+			int size = 0;
+			for (Map.Entry<String, TreeMap<Integer, TreeSet<Integer>>> entry : index.tailMap(query).entrySet()) {
+				if (!entry.getKey().startsWith(query)) {
 					break;
 				}
+				int paths = entry.getValue().size();
+				if (words == null && cost + paths <= splitThreshold) {
+					cost += paths;
+					searchHelper(entry.getValue(), results, lookup);
+					continue;
+				}
+				if (words == null) {
+					words = new String[16];
+					costs = new long[16];
+					cost = 0;
+				} else if (size == words.length) {
+					words = Arrays.copyOf(words, size * 2);
+					costs = Arrays.copyOf(costs, size * 2);
+				}
+				cost += paths;
+				words[size] = entry.getKey();
+				costs[size] = cost;
+				size++;
+			}
+
+			if (words != null) {
+				HashMap<Integer, Results> found = ForkJoinPool.commonPool().invoke(new PrefixTask(words, costs, 0, size));
+				for (Map.Entry<Integer, Results> entry : found.entrySet()) {
+					Results result = lookup.get(entry.getKey());
+					if (result != null) {
+						result.increaseCount(entry.getValue().getCount());
+					} else {
+						lookup.put(entry.getKey(), entry.getValue());
+						results.add(entry.getValue());
+					}
+				}
 			}
 		}
 		Collections.sort(results);
 		return results;
 	}
 
+	/**
+	 * Searches a range of the words a prefix expanded to, splitting the range in
+	 * half until each part costs no more than the split threshold.
+	 */
+	private class PrefixTask extends RecursiveTask<HashMap<Integer, Results>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String[] words;
+		private final long[] costs;
+		private final int from;
+		private final int to;
+
+		/**
+		 * Constructs the task for a range of words
+		 * 
+		 * @param words the words the prefix expanded to
+		 * @param costs the running total of paths up to and including each word
+		 * @param from  the first word to search
+		 * @param to    one past the last word to search
+		 */
+		public PrefixTask(String[] words, long[] costs, int from, int to) {
+			this.words = words;
+			this.costs = costs;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected HashMap<Integer, Results> compute() {
+			long cost = costs[to - 1] - (from == 0 ? 0 : costs[from - 1]);
+			if (cost <= splitThreshold || to - from == 1) {
+				HashMap<Integer, Results> lookup = new HashMap<>();
+				for (int i = from; i < to; i++) {
+					searchHelper(index.get(words[i]), lookup);
+				}
+				return lookup;
+			}
+
+			int middle = (from + to) >>> 1;
+			PrefixTask left = new PrefixTask(words, costs, from, middle);
+			left.fork();
+			HashMap<Integer, Results> right = new PrefixTask(words, costs, middle, to).compute();
+			HashMap<Integer, Results> merged = left.join();
+			for (Map.Entry<Integer, Results> entry : right.entrySet()) {
+				Results result = merged.get(entry.getKey());
+				if (result != null) {
+					result.increaseCount(entry.getValue().getCount());
+				} else {
+					merged.put(entry.getKey(), entry.getValue());
+				}
+			}
+			return merged;
+		}
+	}
+
 	/**
 	 * This will add all the elements in the other invertedIndex and adds it to this
-	 * index
+	 * index. The position sets are copied, so the two indexes never share any
+	 * data afterwards. The paths of the other index are given ids in this index
+	 * the first time they are seen.
 	 * 
 	 * @param other the intvertedIndex to add to the current index
 	 */
 	public void addAll(InvertedIndex other) {
-		for (String key : other.index.keySet()) {
-			if (this.index.containsKey(key) == false) {
-				this.index.put(key, other.index.get(key));
-			} else {
-				for (String path : other.index.get(key).keySet()) {
-					if (this.index.get(key).containsKey(path) == false) {
-						this.index.get(key).put(path, other.index.get(key).get(path));
-					}
-					/*
-					 * TODO else {
-					 *   you have to use the set addAll method to combine togethr the position sets
-					 * }
-					 */
-				}
+		addAllHelper(other);
+	}
 
+	/**
+	 * Replaces what this index has for every path in the other index with what
+	 * the other index has for it, so the word counts of those paths are the
+	 * counts in the other index and not added on top of the old ones.
+	 * 
+	 * @param other the index with the new versions of its paths
+	 */
+	public void replaceAll(InvertedIndex other) {
+		for (int id = 0; id < other.documents.size(); id++) {
+			if (other.getTotal(id) > 0) {
+				removeDocumentHelper(other.documents.getPath(id));
 			}
 		}
+		addAllHelper(other);
+	}
 
-		for (String key : other.totalwords.keySet()) {
-			if (this.totalwords.containsKey(key) == false) {
-				this.totalwords.put(key, other.totalwords.get(key));
+	/**
+	 * The add helper for both adding and replacing every path of another index, so
+	 * replacing does not go through methods a subclass may have changed.
+	 * 
+	 * @param other the intvertedIndex to add to the current index
+	 */
+	private void addAllHelper(InvertedIndex other) {
+		int[] ids = new int[other.documents.size()];
+		Arrays.fill(ids, -1);
+		for (Map.Entry<String, TreeMap<Integer, TreeSet<Integer>>> word : other.index.entrySet()) {
+			TreeMap<Integer, TreeSet<Integer>> pathMap = getOrAddWord(word.getKey());
+			for (Map.Entry<Integer, TreeSet<Integer>> entry : word.getValue().entrySet()) {
+				int id = ids[entry.getKey()];
+				if (id < 0) {
+					id = getOrAddDocument(other.documents.getPath(entry.getKey()));
+					ids[entry.getKey()] = id;
+				}
+				TreeSet<Integer> positions = pathMap.get(id);
+				int count;
+				if (positions == null) {
+					pathMap.put(id, new TreeSet<>(entry.getValue()));
+					count = entry.getValue().size();
+				} else {
+					int before = positions.size();
+					positions.addAll(entry.getValue());
+					count = positions.size() - before;
+				}
+				if (count > 0) {
+					totalwords[id] += count;
+					raiseMaxScore(word.getKey(), pathMap.get(id).size(), id);
+				}
 			}
-			/*
-			 * TODO
-			 * Also not a generally functional approach
-			 */
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * This is the interface for every kind of inverted index. It holds no words or
+ * paths itself, so each index keeps only the storage it needs and has to
+ * decide what every operation means for it.
+ *
+ * @author SirIan
+ *
+ */
+public interface InvertedIndexInterface {
+
+	/**
+	 * Adds the word and the position it was found to the index.
+	 *
+	 * @param word     word to add to index
+	 * @param position position word was found
+	 * @param path     The file the word was from
+	 * @return true if this index did not already contain this word and position
+	 */
+	boolean add(String word, int position, String path);
+
+	/**
+	 * Adds the array of words at once, assuming the first word in the array is at
+	 * position 1.
+	 *
+	 * @param words array of words to add
+	 * @param path  The file the words were from
+	 * @return true if this index is changed as a result of the call
+	 */
+	default boolean addAll(String[] words, String path) {
+		return addAll(words, path, 1);
+	}
+
+	/**
+	 * Adds the array of words at once, assuming the first word in the array is at
+	 * the provided starting position
+	 *
+	 * @param words array of words to add
+	 * @param path  The file the words were from
+	 * @param start starting position
+	 * @return true if this index is changed as a result of the call
+	 */
+	boolean addAll(String[] words, String path, int start);
+
+	/**
+	 * Adds a whole document at once.
+	 *
+	 * @param path     The file the words were from
+	 * @param document the words in the file mapped to the positions they were
+	 *                 found
+	 * @return true if this index is changed as a result of the call
+	 */
+	boolean addDocument(String path, Map<String, ? extends Collection<Integer>> document);
+
+	/**
+	 * Removes every word and position of a path from the index.
+	 *
+	 * @param path the file to remove
+	 * @return true if the path was in the index
+	 */
+	boolean removeDocument(String path);
+
+	/**
+	 * Replaces everything the index has for a path with a new version of the
+	 * document.
+	 *
+	 * @param path     The file the words were from
+	 * @param document the words in the file mapped to the positions they were
+	 *                 found
+	 * @return true if this index is changed as a result of the call
+	 */
+	boolean replaceDocument(String path, Map<String, ? extends Collection<Integer>> document);
+
+	/**
+	 * Saves the index to a binary file that {@link #load(Path)} can read back.
+	 *
+	 * @param path the file to write to
+	 * @throws IOException
+	 */
+	void save(Path path) throws IOException;
+
+	/**
+	 * Replaces what this index has for every path in a file written by
+	 * {@link #save(Path)} with what the file has for it, one document at a time
+	 * through {@link #replaceDocument(String, Map)}. The whole file is read and
+	 * checked before the index is changed, so a bad or cut short file leaves the
+	 * index as it was.
+	 *
+	 * @param path the file to read from
+	 * @throws IOException if the file can not be read or is not a whole saved
+	 *                     index
+	 */
+	default void load(Path path) throws IOException {
+		for (Map.Entry<String, TreeMap<String, TreeSet<Integer>>> document : InvertedIndex.read(path).getDocuments()
+				.entrySet()) {
+			replaceDocument(document.getKey(), document.getValue());
+		}
+	}
+
+	/**
+	 * This will write the locations in a JSON format to the specific path
+	 *
+	 * @param path The path to write to
+	 * @throws IOException
+	 */
+	void toJsonAsLocation(Path path) throws IOException;
+
+	/**
+	 * Writes the index in a JSON format to the specific path
+	 *
+	 * @param path The path to write to
+	 * @throws IOException
+	 */
+	void toJSON(Path path) throws IOException;
+
+	/**
+	 * Checks if the index has the word
+	 *
+	 * @param word The word to look for
+	 * @return true if the word is in the index
+	 */
+	boolean contains(String word);
+
+	/**
+	 * Checks if the index has the word in the location
+	 *
+	 * @param word     The word to look for
+	 * @param location The file to look in
+	 * @return true if the word is in the location
+	 */
+	boolean contains(String word, String location);
+
+	/**
+	 * Checks if the index has the word at the position in the location
+	 *
+	 * @param word     The word to look for
+	 * @param location The file to look in
+	 * @param position The position to look at
+	 * @return true if the word is at the position in the location
+	 */
+	boolean contains(String word, String location, int position);
+
+	/**
+	 * Checks if this index keeps the positions of the words, which are needed to
+	 * write the index as JSON.
+	 *
+	 * @return true if the positions are kept
+	 */
+	boolean hasPositions();
+
+	/**
+	 * Gets the number of words in the index
+	 *
+	 * @return the size of the index
+	 */
+	int getSize();
+
+	/**
+	 * This will search through the index and returns all the results for the
+	 * words
+	 *
+	 * @param queryWords  the words to look for
+	 * @param exactSearch a boolean to see if the exact flag is passed in
+	 * @return an ArrayList of all the results for the words
+	 */
+	default ArrayList<Results> searchIndex(Collection<String> queryWords, boolean exactSearch) {
+		if (exactSearch) {
+			return exactSearch(queryWords);
+		} else {
+			return partialSearch(queryWords);
+		}
+	}
+
+	/**
+	 * Searches for the words that are exactly the query words
+	 *
+	 * @param queryWords the words to look for
+	 * @return an ArrayList of all the results for the words
+	 */
+	ArrayList<Results> exactSearch(Collection<String> queryWords);
+
+	/**
+	 * Searches for the words that start with the query words
+	 *
+	 * @param queryWords the words to look for
+	 * @return an ArrayList of all the results for the words
+	 */
+	ArrayList<Results> partialSearch(Collection<String> queryWords);
+
+	/**
+	 * Searches for only the best results. Gives the same results as the first
+	 * {@code limit} results of {@link #searchIndex(Collection, boolean)}.
+	 *
+	 * @param queryWords  the words to look for
+	 * @param exactSearch a boolean to see if the exact flag is passed in
+	 * @param limit       how many results to keep, or 0 to keep all of them
+	 * @return an ArrayList of the best results for the words
+	 */
+	ArrayList<Results> searchIndex(Collection<String> queryWords, boolean exactSearch, int limit);
+
+	/**
+	 * Searches for the best results without going over the budget, marking the
+	 * budget as truncated if anything was left out.
+	 *
+	 * @param queryWords  the words to look for
+	 * @param exactSearch a boolean to see if the exact flag is passed in
+	 * @param limit       how many results to keep, or 0 to keep all of them
+	 * @param budget      the started budget of the query
+	 * @return an ArrayList of the best results found within the budget
+	 */
+	ArrayList<Results> searchIndex(Collection<String> queryWords, boolean exactSearch, int limit,
+			QueryBudget budget);
+}
@@ -0,0 +1,204 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds the best results for a query without scoring every path, using the
+ * MaxScore method. The words are sorted by the highest score they can add to a
+ * path. Once the top results are full, the words whose scores added together
+ * can not beat the worst top result are only looked up for paths found
+ * through the other words, and paths whose best possible score still can not
+ * beat it are skipped.
+ *
+ * @author SirIan
+ *
+ */
+public class MaxScoreEvaluator {
+
+	/**
+	 * How much a bound is allowed to be off by rounding before a path is skipped.
+	 */
+	private static final double TOLERANCE = 1e-9;
+
+	private final InvertedIndex index;
+	private final AtomicLong scored;
+	private final AtomicLong skipped;
+
+	/**
+	 * Constructs the evaluator for an index
+	 *
+	 * @param index the index to search
+	 */
+	public MaxScoreEvaluator(InvertedIndex index) {
+		this.index = index;
+		this.scored = new AtomicLong();
+		this.skipped = new AtomicLong();
+	}
+
+	/**
+	 * Searches for the best results of the query
+	 *
+	 * @param queryWords  the words to look for
+	 * @param exactSearch a boolean to see if the exact flag is passed in
+	 * @param limit       how many results to keep
+	 * @return the best results, sorted
+	 */
+	public ArrayList<Results> search(Collection<String> queryWords, boolean exactSearch, int limit) {
+		ArrayList<Term> terms = new ArrayList<>();
+		for (String word : index.matchingWords(queryWords, exactSearch)) {
+			terms.add(new Term(index.getLocations(word), index.getMaxScore(word)));
+		}
+		Collections.sort(terms);
+
+		double[] bounds = new double[terms.size()];
+		double bound = 0;
+		for (int i = 0; i < terms.size(); i++) {
+			bound += terms.get(i).maxScore;
+			bounds[i] = bound;
+		}
+
+		PriorityQueue<Results> best = new PriorityQueue<>(limit + 1, Collections.reverseOrder());
+		double threshold = Double.NEGATIVE_INFINITY;
+		int essential = 0;
+		long scoredCount = 0;
+		long skippedCount = 0;
+
+		while (true) {
+			int path = -1;
+			for (int i = essential; i < terms.size(); i++) {
+				int current = terms.get(i).current;
+				if (current >= 0 && (path < 0 || current < path)) {
+					path = current;
+				}
+			}
+			if (path < 0) {
+				break;
+			}
+
+			int count = 0;
+			for (int i = essential; i < terms.size(); i++) {
+				Term term = terms.get(i);
+				if (term.current == path) {
+					count += term.locations.get(path).size();
+					term.next();
+				}
+			}
+
+			int total = index.getTotal(path);
+			if (essential > 0 && below((double) count / total + bounds[essential - 1], threshold)) {
+				skippedCount++;
+				continue;
+			}
+
+			for (int i = essential - 1; i >= 0; i--) {
+				TreeSet<Integer> positions = terms.get(i).locations.get(path);
+				if (positions != null) {
+					count += positions.size();
+				}
+			}
+			scoredCount++;
+
+			Results result = new Results(index.getPath(path), count, total);
+			if (best.size() < limit) {
+				best.add(result);
+			} else if (result.compareTo(best.peek()) < 0) {
+				best.add(result);
+				best.poll();
+			} else {
+				continue;
+			}
+
+			if (best.size() == limit) {
+				threshold = best.peek().getScore();
+				while (essential < terms.size() && below(bounds[essential], threshold)) {
+					essential++;
+				}
+			}
+		}
+
+		scored.addAndGet(scoredCount);
+		skipped.addAndGet(skippedCount);
+
+		ArrayList<Results> results = new ArrayList<>(best);
+		Collections.sort(results);
+		return results;
+	}
+
+	/**
+	 * Checks if a bound is clearly below the threshold, leaving room for rounding
+	 *
+	 * @param bound     the highest score a path could get
+	 * @param threshold the score of the worst top result
+	 * @return true if the path can not make it into the top results
+	 */
+	private static boolean below(double bound, double threshold) {
+		return bound * (1 + TOLERANCE) < threshold;
+	}
+
+	/**
+	 * Gets how many paths were fully scored
+	 *
+	 * @return the number of scored paths
+	 */
+	public long getScored() {
+		return scored.get();
+	}
+
+	/**
+	 * Gets how many paths were skipped without being fully scored
+	 *
+	 * @return the number of skipped paths
+	 */
+	public long getSkipped() {
+		return skipped.get();
+	}
+
+	/**
+	 * Returns the number of scored and skipped paths
+	 */
+	@Override
+	public String toString() {
+		return "scored " + getScored() + " paths, skipped " + getSkipped() + " paths";
+	}
+
+	/**
+	 * One word of the query, walking through the ids of its paths in order.
+	 */
+	private static class Term implements Comparable<Term> {
+
+		private final TreeMap<Integer, TreeSet<Integer>> locations;
+		private final double maxScore;
+		private final Iterator<Integer> paths;
+		private int current;
+
+		/**
+		 * Starts at the first path of the word
+		 *
+		 * @param locations the path ids and positions of the word
+		 * @param maxScore  the highest score of the word in any path
+		 */
+		public Term(TreeMap<Integer, TreeSet<Integer>> locations, double maxScore) {
+			this.locations = locations;
+			this.maxScore = maxScore;
+			this.paths = locations.keySet().iterator();
+			next();
+		}
+
+		/**
+		 * Moves to the next path of the word
+		 */
+		public void next() {
+			current = paths.hasNext() ? paths.next() : -1;
+		}
+
+		@Override
+		public int compareTo(Term other) {
+			return Double.compare(this.maxScore, other.maxScore);
+		}
+	}
+}
@@ -5,29 +5,67 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
-// TODO Don't need both this and the ThreadSafeInvertedQueryParser class 
-// TODO implements QueryParserInterface
-public class MultiThreadQueryParser {
+/**
+ * Searches the queries at the same time on a work queue. Every search runs
+ * without holding any shared lock and its results go into a concurrent map,
+ * which is only sorted by query when the results are written.
+ * 
+ * @author SirIan
+ *
+ */
+public class MultiThreadQueryParser implements QueryParserInterface {
 
-	private final TreeMap<String, ArrayList<Results>> results;
-	private final InvertedIndex invertedIndex;
+	private final ConcurrentHashMap<String, ArrayList<Results>> results;
+	private final Set<String> queries;
+	private final InvertedIndexInterface invertedIndex;
 	private final WorkQueue queue;
+	private final int limit;
+	private final QueryLimiter limiter;
 
 	/**
 	 * Constructor for the QueryFileParser
 	 * 
 	 * @param index InvertedIndex that holds the index of words.
 	 */
-	public MultiThreadQueryParser(InvertedIndex index, WorkQueue queue) {
-		results = new TreeMap<>();
+	public MultiThreadQueryParser(InvertedIndexInterface index, WorkQueue queue) {
+		this(index, queue, 0);
+	}
+
+	/**
+	 * Constructor for the QueryFileParser that only keeps the best results of
+	 * every query
+	 * 
+	 * @param index InvertedIndex that holds the index of words.
+	 * @param queue the work queue to search on
+	 * @param limit how many results to keep for every query, or 0 to keep all
+	 */
+	public MultiThreadQueryParser(InvertedIndexInterface index, WorkQueue queue, int limit) {
+		this(index, queue, limit, new QueryLimiter());
+	}
+
+	/**
+	 * Constructor for the QueryFileParser that searches through a limiter, which
+	 * can turn away or cut short queries that would take too much
+	 * 
+	 * @param index   InvertedIndex that holds the index of words.
+	 * @param queue   the work queue to search on
+	 * @param limit   how many results to keep for every query, or 0 to keep all
+	 * @param limiter the limiter every search goes through
+	 */
+	public MultiThreadQueryParser(InvertedIndexInterface index, WorkQueue queue, int limit, QueryLimiter limiter) {
+		results = new ConcurrentHashMap<>();
+		queries = ConcurrentHashMap.newKeySet();
 		this.invertedIndex = index;
 		this.queue = queue;
+		this.limit = limit;
+		this.limiter = limiter;
 	}
 
 	/**
@@ -37,46 +75,40 @@ public class MultiThreadQueryParser {
 	 * @param exactFlag to see if exact flag was passed too
 	 * @throws IOException
 	 */
+	@Override
 	public void readQueries(Path path, boolean exactFlag) throws IOException {
 		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
 			String line = "";
 			while ((line = reader.readLine()) != null) {
 				parseLine(line, exactFlag);
 			}
-			// TODO Put in finally block
+		} finally {
 			this.queue.finish();
 		}
 	}
 
 	/**
-	 * This will parse a single line and stem it and then add it to the results
+	 * This will hand a single line to the work queue to be stemmed and searched
 	 * 
 	 * @param line  The single line in the file
 	 * @param exact The flag to see if must search exact word or not
 	 */
+	@Override
 	public void parseLine(String line, boolean exact) {
-		// TODO Move ALL of the work into the task
-		TreeSet<String> queryWords = new TreeSet<>();
-		SnowballStemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
-		TextFileStemmer.stemLine(line, stemmer, queryWords);
-		String queryLine = String.join(" ", queryWords);
-		// TODO Need to protect the access to results below
-		if (!results.containsKey(queryLine) && !queryLine.equals("")) {
-			this.queue.execute(new Task(queryWords, exact, results, this.invertedIndex));
-		}
+		this.queue.execute(new Task(line, exact));
 	}
 
 	/**
-	 * This will write a json at the path it was given.
+	 * This will write a json at the path it was given. The results of queries that
+	 * were cut short or turned away are written with their status.
 	 * 
 	 * @param path    the path it writes to
-	 * @param isIndex boolean that checks if this writer should write for the index
-	 *                or the search queries.
 	 * @throws IOException
 	 */
+	@Override
 	public void toJSON(Path path) throws IOException {
 		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
-			TreeJSONWriter.asResults(this.results, writer, 0);
+			TreeJSONWriter.asResults(new TreeMap<>(this.results), writer, 0);
 		}
 	}
 
@@ -87,43 +119,29 @@ public class MultiThreadQueryParser {
 	 *
 	 */
 	public class Task implements Runnable {
-		// TODO Only need the line and exactFlag
-		// TODO Everything else can either be a local variable or accessed directly
+		private final String line;
 		private final boolean exactFlag;
-		private final Collection<String> queryWords;
-		private final TreeMap<String, ArrayList<Results>> results;
-		private final InvertedIndex index;
 
 		/**
 		 * This is the constructor for the runnable class
 		 * 
-		 * @param queryWords The collection of words to search for
-		 * @param exact      Boolean to do either exact or partial
-		 * @param results    the results dataStructure to add query words.
+		 * @param line  The line of the query file to search for
+		 * @param exact Boolean to do either exact or partial
 		 */
-		public Task(Collection<String> queryWords, boolean exact, TreeMap<String, ArrayList<Results>> results,
-				InvertedIndex index) {
+		public Task(String line, boolean exact) {
+			this.line = line;
 			this.exactFlag = exact;
-			this.queryWords = queryWords;
-			this.results = results;
-			this.index = index;
 		}
 
 		@Override
 		public void run() {
-			synchronized (results) {
-				results.put(String.join(" ", queryWords), index.searchIndex(queryWords, exactFlag));
+			TreeSet<String> queryWords = new TreeSet<>();
+			SnowballStemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+			TextFileStemmer.stemLine(line, stemmer, queryWords);
+			String queryLine = String.join(" ", queryWords);
+			if (!queryLine.equals("") && queries.add(queryLine)) {
+				results.put(queryLine, limiter.search(invertedIndex, queryWords, exactFlag, limit));
 			}
-			
-			/*
-			 * 
-			 * List<...> current = index.searchIndex(queryWords, exactFlag);
-			 * String queryLine = String.join(" ", queryWords);
-			 * synchronized (results) {
-				results.put(queryLine, current);
-			} 
-			 * 
-			 */
 		}
 	}
 
@@ -0,0 +1,182 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * A bump allocator over large direct buffers. Memory handed out by the arena
+ * lives outside of the java heap, so the garbage collector never has to scan or
+ * copy it. Allocations are addressed by a long handle that holds the chunk in
+ * the upper 32 bits and the offset inside the chunk in the lower 32 bits.
+ * Memory is only given back when the whole arena is no longer reachable.
+ *
+ * @author SirIan
+ *
+ */
+public class OffHeapArena {
+
+	/**
+	 * The handle used to mean "nothing allocated".
+	 */
+	public static final long NULL = -1L;
+
+	/**
+	 * The default size of each chunk, 16 MB.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 24;
+
+	private final int chunkSize;
+	private final ArrayList<ByteBuffer> chunks;
+	private int used;
+
+	/**
+	 * Initializes an arena with the default chunk size.
+	 */
+	public OffHeapArena() {
+		this(DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Initializes an arena that reserves memory in chunks of the given size.
+	 *
+	 * @param chunkSize the number of bytes in each chunk
+	 */
+	public OffHeapArena(int chunkSize) {
+		this.chunkSize = chunkSize;
+		this.chunks = new ArrayList<>();
+		this.used = 0;
+	}
+
+	/**
+	 * Allocates a block of memory. The block never crosses a chunk, so offsets
+	 * can be added to the handle directly.
+	 *
+	 * @param size the number of bytes needed
+	 * @return the handle of the block
+	 */
+	public long allocate(int size) {
+		if (size > chunkSize) {
+			throw new IllegalArgumentException("Can not allocate " + size + " bytes in chunks of " + chunkSize);
+		}
+		if (chunks.isEmpty() || used + size > chunkSize) {
+			chunks.add(ByteBuffer.allocateDirect(chunkSize));
+			used = 0;
+		}
+		long handle = ((long) (chunks.size() - 1) << 32) | used;
+		used = (used + size + 7) & ~7;
+		return handle;
+	}
+
+	/**
+	 * Gets the chunk the handle points into
+	 *
+	 * @param handle the handle of the block
+	 * @return the chunk of the block
+	 */
+	private ByteBuffer chunk(long handle) {
+		return chunks.get((int) (handle >>> 32));
+	}
+
+	/**
+	 * Gets the offset of the handle inside of its chunk
+	 *
+	 * @param handle the handle of the block
+	 * @return the offset in the chunk
+	 */
+	private static int offset(long handle) {
+		return (int) handle;
+	}
+
+	/**
+	 * Reads an int
+	 *
+	 * @param handle the handle of the block
+	 * @param offset the offset inside of the block
+	 * @return the int at that offset
+	 */
+	public int getInt(long handle, int offset) {
+		return chunk(handle).getInt(offset(handle) + offset);
+	}
+
+	/**
+	 * Writes an int
+	 *
+	 * @param handle the handle of the block
+	 * @param offset the offset inside of the block
+	 * @param value  the int to write
+	 */
+	public void putInt(long handle, int offset, int value) {
+		chunk(handle).putInt(offset(handle) + offset, value);
+	}
+
+	/**
+	 * Reads a long
+	 *
+	 * @param handle the handle of the block
+	 * @param offset the offset inside of the block
+	 * @return the long at that offset
+	 */
+	public long getLong(long handle, int offset) {
+		return chunk(handle).getLong(offset(handle) + offset);
+	}
+
+	/**
+	 * Writes a long
+	 *
+	 * @param handle the handle of the block
+	 * @param offset the offset inside of the block
+	 * @param value  the long to write
+	 */
+	public void putLong(long handle, int offset, long value) {
+		chunk(handle).putLong(offset(handle) + offset, value);
+	}
+
+	/**
+	 * Reads a byte
+	 *
+	 * @param handle the handle of the block
+	 * @param offset the offset inside of the block
+	 * @return the byte at that offset
+	 */
+	public byte getByte(long handle, int offset) {
+		return chunk(handle).get(offset(handle) + offset);
+	}
+
+	/**
+	 * Copies bytes into a block
+	 *
+	 * @param handle the handle of the block
+	 * @param bytes  the bytes to copy
+	 */
+	public void putBytes(long handle, byte[] bytes) {
+		ByteBuffer chunk = chunk(handle);
+		int start = offset(handle);
+		for (int i = 0; i < bytes.length; i++) {
+			chunk.put(start + i, bytes[i]);
+		}
+	}
+
+	/**
+	 * Copies bytes out of a block
+	 *
+	 * @param handle the handle of the block
+	 * @param length the number of bytes to copy
+	 * @return the bytes in the block
+	 */
+	public byte[] getBytes(long handle, int length) {
+		ByteBuffer chunk = chunk(handle);
+		int start = offset(handle);
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = chunk.get(start + i);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Gets how much memory the arena has reserved outside of the heap
+	 *
+	 * @return the number of reserved bytes
+	 */
+	public long getReservedBytes() {
+		return (long) chunks.size() * chunkSize;
+	}
+}
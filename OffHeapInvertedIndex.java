@@ -0,0 +1,761 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * An inverted index that keeps the words and their positions outside of the
+ * java heap. The word bytes, the word records and the position lists are all
+ * allocated from an {@link OffHeapArena}, and the hash table and sorted word
+ * list are direct buffers, so the heap only holds a few handles and the list of
+ * paths no matter how big the index gets.
+ *
+ * Every document is expected to be added once with increasing positions, the
+ * way {@link FileReader} adds them, so adding to a path with no words only
+ * checks for a repeat of the last position added for a word. Adding to a path
+ * that already has words, like a file that was also in a loaded index, looks
+ * through the positions of each word first, so no position is stored twice.
+ *
+ * @author SirIan
+ *
+ */
+public class OffHeapInvertedIndex implements InvertedIndexInterface {
+
+	/*
+	 * Word record layout: the handle and length of the word bytes, the hash of the
+	 * word, the first and last block of positions, and the last document and
+	 * position added for the word.
+	 */
+	private static final int TERM = 0;
+	private static final int LENGTH = 8;
+	private static final int HASH = 12;
+	private static final int HEAD = 16;
+	private static final int TAIL = 24;
+	private static final int LAST_DOCUMENT = 32;
+	private static final int LAST_POSITION = 36;
+	private static final int RECORD_SIZE = 40;
+	private static final int RECORDS_PER_BLOCK = 1024;
+
+	/*
+	 * Position block layout: the handle of the next block, how many entries are
+	 * used and how many fit, followed by (document, position) pairs.
+	 */
+	private static final int NEXT = 0;
+	private static final int COUNT = 8;
+	private static final int CAPACITY = 12;
+	private static final int ENTRIES = 16;
+	private static final int ENTRY_SIZE = 8;
+	private static final int FIRST_CAPACITY = 4;
+	private static final int MAX_CAPACITY = 512;
+
+	private final OffHeapArena arena;
+	private long[] recordBlocks;
+	private int termCount;
+
+	private ByteBuffer table;
+	private int tableMask;
+
+	private ByteBuffer sorted;
+
+	private final DocumentRegistry documents;
+	private int[] totals;
+
+	/**
+	 * Initializes the index with an arena of the default chunk size.
+	 */
+	public OffHeapInvertedIndex() {
+		this(new OffHeapArena());
+	}
+
+	/**
+	 * Initializes the index in the given arena.
+	 *
+	 * @param arena where to allocate the words and positions
+	 */
+	public OffHeapInvertedIndex(OffHeapArena arena) {
+		this.arena = arena;
+		this.recordBlocks = new long[16];
+		this.termCount = 0;
+		this.table = ByteBuffer.allocateDirect(1024 * Integer.BYTES);
+		this.tableMask = 1023;
+		this.sorted = null;
+		this.documents = new DocumentRegistry();
+		this.totals = new int[16];
+	}
+
+	@Override
+	public boolean add(String word, int position, String path) {
+		byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+		int term = findOrAddTerm(bytes, hash(bytes));
+		int document = findOrAddDocument(path);
+		long record = record(term);
+		if (arena.getInt(record, LAST_DOCUMENT) == document && arena.getInt(record, LAST_POSITION) == position) {
+			return false;
+		}
+		if (totals[document] > 0 && positions(record, document).contains(position)) {
+			return false;
+		}
+		append(record, document, position);
+		totals[document]++;
+		return true;
+	}
+
+	@Override
+	public boolean addAll(String[] text, String path, int start) {
+		boolean changed = false;
+		for (String word : text) {
+			if (add(word, start, path)) {
+				changed = true;
+			}
+			start++;
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean addDocument(String path, Map<String, ? extends Collection<Integer>> document) {
+		int id = findOrAddDocument(path);
+		boolean existing = totals[id] > 0;
+		int added = 0;
+		for (Map.Entry<String, ? extends Collection<Integer>> entry : document.entrySet()) {
+			byte[] bytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+			long record = record(findOrAddTerm(bytes, hash(bytes)));
+			HashSet<Integer> stored = existing ? positions(record, id) : null;
+			for (int position : entry.getValue()) {
+				if (stored == null || stored.add(position)) {
+					append(record, id, position);
+					added++;
+				}
+			}
+		}
+		totals[id] += added;
+		return added > 0;
+	}
+
+	/**
+	 * Not supported, since the arena never gives memory back.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public boolean removeDocument(String path) {
+		throw new UnsupportedOperationException("Documents can not be removed from an off heap index.");
+	}
+
+	/**
+	 * Not supported, since the old version of the document can not be removed.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public boolean replaceDocument(String path, Map<String, ? extends Collection<Integer>> document) {
+		throw new UnsupportedOperationException("Documents can not be replaced in an off heap index.");
+	}
+
+	@Override
+	public boolean contains(String word) {
+		byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+		return findTerm(bytes, hash(bytes)) >= 0;
+	}
+
+	@Override
+	public boolean contains(String word, String location) {
+		return contains(word, location, -1);
+	}
+
+	/**
+	 * Checks if the word and location and position is in the index
+	 *
+	 * @param word     the word to see if it is in the index
+	 * @param location the location to see if the location is in the word
+	 * @param position the position to look for, or -1 for any position
+	 * @return true if the word is in the index false if otherwise
+	 */
+	@Override
+	public boolean contains(String word, String location, int position) {
+		byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+		int term = findTerm(bytes, hash(bytes));
+		int document = documents.getId(location);
+		if (term < 0 || document < 0) {
+			return false;
+		}
+
+		for (long block = arena.getLong(record(term), HEAD); block != OffHeapArena.NULL; block = arena.getLong(block,
+				NEXT)) {
+			int count = arena.getInt(block, COUNT);
+			for (int i = 0; i < count; i++) {
+				int offset = ENTRIES + i * ENTRY_SIZE;
+				if (arena.getInt(block, offset) == document
+						&& (position < 0 || arena.getInt(block, offset + Integer.BYTES) == position)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean hasPositions() {
+		return true;
+	}
+
+	@Override
+	public int getSize() {
+		return termCount;
+	}
+
+	/**
+	 * Gets how much memory the index has reserved outside of the heap
+	 *
+	 * @return the number of reserved bytes
+	 */
+	public long getOffHeapBytes() {
+		return arena.getReservedBytes() + table.capacity() + (sorted == null ? 0 : sorted.capacity());
+	}
+
+	@Override
+	public ArrayList<Results> exactSearch(Collection<String> queryWords) {
+		Postings.Counter counts = Postings.Counter.get(documents.size());
+		for (String query : queryWords) {
+			byte[] bytes = query.getBytes(StandardCharsets.UTF_8);
+			int term = findTerm(bytes, hash(bytes));
+			if (term >= 0) {
+				count(term, counts);
+			}
+		}
+		return toResults(counts, QueryBudget.UNLIMITED);
+	}
+
+	@Override
+	public ArrayList<Results> partialSearch(Collection<String> queryWords) {
+		ensureSorted();
+		Postings.Counter counts = Postings.Counter.get(documents.size());
+		for (String query : queryWords) {
+			byte[] prefix = query.getBytes(StandardCharsets.UTF_8);
+			for (int i = lowerBound(prefix); i < termCount; i++) {
+				int term = sorted.getInt(i * Integer.BYTES);
+				if (!startsWith(record(term), prefix)) {
+					break;
+				}
+				count(term, counts);
+			}
+		}
+		return toResults(counts, QueryBudget.UNLIMITED);
+	}
+
+	/**
+	 * Searches for the best results. There are no per word bounds stored off the
+	 * heap, so every path is scored and the list is cut down afterwards.
+	 *
+	 * @param queryWords  the words to look for
+	 * @param exactSearch a boolean to see if the exact flag is passed in
+	 * @param limit       how many results to keep, or 0 to keep all of them
+	 * @return an ArrayList of the best results for the words
+	 */
+	@Override
+	public ArrayList<Results> searchIndex(Collection<String> queryWords, boolean exactSearch, int limit) {
+		ArrayList<Results> results = searchIndex(queryWords, exactSearch);
+		if (limit > 0 && results.size() > limit) {
+			return new ArrayList<>(results.subList(0, limit));
+		}
+		return results;
+	}
+
+	@Override
+	public ArrayList<Results> searchIndex(Collection<String> queryWords, boolean exactSearch, int limit,
+			QueryBudget budget) {
+		if (budget.isUnlimited()) {
+			return searchIndex(queryWords, exactSearch, limit);
+		}
+		if (!exactSearch) {
+			ensureSorted();
+		}
+		Postings.Counter counts = Postings.Counter.get(documents.size());
+		for (String query : queryWords) {
+			if (!count(query, exactSearch, counts, budget)) {
+				break;
+			}
+		}
+		return QueryBudget.top(toResults(counts, budget), limit);
+	}
+
+	/**
+	 * Adds the counts of the words matching one query word, as long as the budget
+	 * lets it look at them
+	 *
+	 * @param query       the query word
+	 * @param exactSearch a boolean to see if the exact flag is passed in
+	 * @param counts      the counts for every document
+	 * @param budget      the budget of the query
+	 * @return false if the budget ran out
+	 */
+	private boolean count(String query, boolean exactSearch, Postings.Counter counts, QueryBudget budget) {
+		byte[] bytes = query.getBytes(StandardCharsets.UTF_8);
+		if (exactSearch) {
+			int term = findTerm(bytes, hash(bytes));
+			if (term >= 0) {
+				if (!budget.allowTerm()) {
+					return false;
+				}
+				count(term, counts);
+			}
+			return true;
+		}
+		for (int i = lowerBound(bytes); i < termCount; i++) {
+			int term = sorted.getInt(i * Integer.BYTES);
+			if (!startsWith(record(term), bytes)) {
+				break;
+			}
+			if (!budget.allowTerm()) {
+				return false;
+			}
+			count(term, counts);
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the number of positions of the word in every document to the counts
+	 *
+	 * @param term   the word to count
+	 * @param counts the counts for every document
+	 */
+	private void count(int term, Postings.Counter counts) {
+		for (long block = arena.getLong(record(term), HEAD); block != OffHeapArena.NULL; block = arena.getLong(block,
+				NEXT)) {
+			int count = arena.getInt(block, COUNT);
+			for (int i = 0; i < count; i++) {
+				counts.add(arena.getInt(block, ENTRIES + i * ENTRY_SIZE), 1);
+			}
+		}
+	}
+
+	/**
+	 * Turns the counts of the documents the query found into sorted results
+	 *
+	 * @param counts the counts of the documents the query found
+	 * @param budget the budget of the query, which limits how many results are
+	 *               made
+	 * @return the sorted results of every document with a count
+	 */
+	private ArrayList<Results> toResults(Postings.Counter counts, QueryBudget budget) {
+		ArrayList<Results> results = new ArrayList<>(counts.size());
+		for (int i = 0; i < counts.size(); i++) {
+			int document = counts.id(i);
+			if (!budget.allowDocument()) {
+				break;
+			}
+			results.add(new Results(documents.getPath(document), counts.count(document), totals[document]));
+		}
+		Collections.sort(results);
+		return results;
+	}
+
+	/**
+	 * Adds every document in a file written by {@link #save(Path)}. Documents can
+	 * not be replaced in an off heap index, so none of the saved paths can have
+	 * words in this index yet. The whole file is read and checked before the
+	 * index is changed.
+	 *
+	 * @param path the file to read from
+	 * @throws IOException           if the file can not be read or is not a whole
+	 *                               saved index
+	 * @throws IllegalStateException if a saved path already has words in this
+	 *                               index
+	 */
+	@Override
+	public void load(Path path) throws IOException {
+		TreeMap<String, TreeMap<String, TreeSet<Integer>>> loaded = InvertedIndex.read(path).getDocuments();
+		for (String document : loaded.keySet()) {
+			int id = documents.getId(document);
+			if (id >= 0 && totals[id] > 0) {
+				throw new IllegalStateException("Documents can not be replaced in an off heap index: " + document);
+			}
+		}
+		for (Map.Entry<String, TreeMap<String, TreeSet<Integer>>> document : loaded.entrySet()) {
+			addDocument(document.getKey(), document.getValue());
+		}
+	}
+
+	/**
+	 * Saves the index. Like {@link #toJSON(Path)}, the index is copied onto the
+	 * heap first.
+	 */
+	@Override
+	public void save(Path path) throws IOException {
+		toHeap().save(path);
+	}
+
+	@Override
+	public void toJsonAsLocation(Path path) throws IOException {
+		TreeMap<String, Integer> locations = new TreeMap<>();
+		for (int document = 0; document < documents.size(); document++) {
+			if (totals[document] > 0) {
+				locations.put(documents.getPath(document), totals[document]);
+			}
+		}
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			TreeJSONWriter.writeLocations(locations, writer, 0);
+		}
+	}
+
+	/**
+	 * Writes the index as JSON. The nested maps the writer needs are built on the
+	 * heap first, so this is only meant for indexes that would also fit on the
+	 * heap.
+	 */
+	@Override
+	public void toJSON(Path path) throws IOException {
+		toHeap().toJSON(path);
+	}
+
+	@Override
+	public String toString() {
+		return toHeap().toString();
+	}
+
+	/**
+	 * Copies the index onto the heap
+	 *
+	 * @return a regular inverted index with the same words and positions, sharing
+	 *         the ids of the paths
+	 */
+	private InvertedIndex toHeap() {
+		InvertedIndex copy = new InvertedIndex(documents);
+		for (int term = 0; term < termCount; term++) {
+			long record = record(term);
+			String word = new String(arena.getBytes(arena.getLong(record, TERM), arena.getInt(record, LENGTH)),
+					StandardCharsets.UTF_8);
+			for (long block = arena.getLong(record, HEAD); block != OffHeapArena.NULL; block = arena.getLong(block,
+					NEXT)) {
+				int count = arena.getInt(block, COUNT);
+				for (int i = 0; i < count; i++) {
+					int offset = ENTRIES + i * ENTRY_SIZE;
+					copy.add(word, arena.getInt(block, offset), new int[] { arena.getInt(block, offset + Integer.BYTES) });
+				}
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Gets the id of the path, giving it the next id if it is new
+	 *
+	 * @param path the path to look up
+	 * @return the id of the path
+	 */
+	private int findOrAddDocument(String path) {
+		int id = documents.getOrAdd(path);
+		if (id == totals.length) {
+			totals = Arrays.copyOf(totals, totals.length * 2);
+		}
+		return id;
+	}
+
+	/**
+	 * Collects the positions a word already has in a path
+	 *
+	 * @param record   the record of the word
+	 * @param document the id of the path
+	 * @return the positions of the word in the path
+	 */
+	private HashSet<Integer> positions(long record, int document) {
+		HashSet<Integer> positions = new HashSet<>();
+		for (long block = arena.getLong(record, HEAD); block != OffHeapArena.NULL; block = arena.getLong(block, NEXT)) {
+			int count = arena.getInt(block, COUNT);
+			for (int i = 0; i < count; i++) {
+				int offset = ENTRIES + i * ENTRY_SIZE;
+				if (arena.getInt(block, offset) == document) {
+					positions.add(arena.getInt(block, offset + Integer.BYTES));
+				}
+			}
+		}
+		return positions;
+	}
+
+	/**
+	 * Gets the handle of the record for a word
+	 *
+	 * @param term the id of the word
+	 * @return the handle of the record
+	 */
+	private long record(int term) {
+		return recordBlocks[term / RECORDS_PER_BLOCK] + (long) (term % RECORDS_PER_BLOCK) * RECORD_SIZE;
+	}
+
+	/**
+	 * Adds a position to the last block of a word, starting a new block if the
+	 * last one is full
+	 *
+	 * @param record   the record of the word
+	 * @param document the id of the path
+	 * @param position the position of the word
+	 */
+	private void append(long record, int document, int position) {
+		long tail = arena.getLong(record, TAIL);
+		if (tail == OffHeapArena.NULL || arena.getInt(tail, COUNT) == arena.getInt(tail, CAPACITY)) {
+			int capacity = tail == OffHeapArena.NULL ? FIRST_CAPACITY
+					: Math.min(arena.getInt(tail, CAPACITY) * 2, MAX_CAPACITY);
+			long block = arena.allocate(ENTRIES + capacity * ENTRY_SIZE);
+			arena.putLong(block, NEXT, OffHeapArena.NULL);
+			arena.putInt(block, COUNT, 0);
+			arena.putInt(block, CAPACITY, capacity);
+			if (tail == OffHeapArena.NULL) {
+				arena.putLong(record, HEAD, block);
+			} else {
+				arena.putLong(tail, NEXT, block);
+			}
+			arena.putLong(record, TAIL, block);
+			tail = block;
+		}
+
+		int count = arena.getInt(tail, COUNT);
+		arena.putInt(tail, ENTRIES + count * ENTRY_SIZE, document);
+		arena.putInt(tail, ENTRIES + count * ENTRY_SIZE + Integer.BYTES, position);
+		arena.putInt(tail, COUNT, count + 1);
+		arena.putInt(record, LAST_DOCUMENT, document);
+		arena.putInt(record, LAST_POSITION, position);
+	}
+
+	/**
+	 * Hashes the bytes of a word
+	 *
+	 * @param bytes the bytes of the word
+	 * @return the hash of the word
+	 */
+	private static int hash(byte[] bytes) {
+		int hash = Arrays.hashCode(bytes);
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Finds the id of a word in the hash table
+	 *
+	 * @param bytes the bytes of the word
+	 * @param hash  the hash of the word
+	 * @return the id of the word or -1 if it is not in the index
+	 */
+	private int findTerm(byte[] bytes, int hash) {
+		for (int slot = hash & tableMask;; slot = (slot + 1) & tableMask) {
+			int term = table.getInt(slot * Integer.BYTES) - 1;
+			if (term < 0) {
+				return -1;
+			}
+			long record = record(term);
+			if (arena.getInt(record, HASH) == hash && compare(record, bytes) == 0) {
+				return term;
+			}
+		}
+	}
+
+	/**
+	 * Finds the id of a word in the hash table, adding it if it is new
+	 *
+	 * @param bytes the bytes of the word
+	 * @param hash  the hash of the word
+	 * @return the id of the word
+	 */
+	private int findOrAddTerm(byte[] bytes, int hash) {
+		int term = findTerm(bytes, hash);
+		if (term >= 0) {
+			return term;
+		}
+
+		term = termCount++;
+		if (term % RECORDS_PER_BLOCK == 0) {
+			if (term / RECORDS_PER_BLOCK == recordBlocks.length) {
+				recordBlocks = Arrays.copyOf(recordBlocks, recordBlocks.length * 2);
+			}
+			recordBlocks[term / RECORDS_PER_BLOCK] = arena.allocate(RECORDS_PER_BLOCK * RECORD_SIZE);
+		}
+
+		long word = arena.allocate(bytes.length);
+		arena.putBytes(word, bytes);
+		long record = record(term);
+		arena.putLong(record, TERM, word);
+		arena.putInt(record, LENGTH, bytes.length);
+		arena.putInt(record, HASH, hash);
+		arena.putLong(record, HEAD, OffHeapArena.NULL);
+		arena.putLong(record, TAIL, OffHeapArena.NULL);
+		arena.putInt(record, LAST_DOCUMENT, -1);
+		arena.putInt(record, LAST_POSITION, -1);
+
+		if (termCount * 2 > tableMask + 1) {
+			resizeTable();
+		} else {
+			insert(table, tableMask, term, hash);
+		}
+		sorted = null;
+		return term;
+	}
+
+	/**
+	 * Doubles the hash table and puts every word back in
+	 */
+	private void resizeTable() {
+		int capacity = (tableMask + 1) * 2;
+		ByteBuffer larger = ByteBuffer.allocateDirect(capacity * Integer.BYTES);
+		for (int term = 0; term < termCount; term++) {
+			insert(larger, capacity - 1, term, arena.getInt(record(term), HASH));
+		}
+		table = larger;
+		tableMask = capacity - 1;
+	}
+
+	/**
+	 * Puts a word in the first free slot of a hash table
+	 *
+	 * @param table the hash table
+	 * @param mask  the number of slots minus one
+	 * @param term  the id of the word
+	 * @param hash  the hash of the word
+	 */
+	private static void insert(ByteBuffer table, int mask, int term, int hash) {
+		int slot = hash & mask;
+		while (table.getInt(slot * Integer.BYTES) != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table.putInt(slot * Integer.BYTES, term + 1);
+	}
+
+	/**
+	 * Compares the bytes of a stored word to other bytes as unsigned values, which
+	 * is the same order as {@link String#compareTo(String)} for everything outside
+	 * of the supplementary characters.
+	 *
+	 * @param record the record of the stored word
+	 * @param bytes  the bytes to compare to
+	 * @return negative, zero or positive like a comparator
+	 */
+	private int compare(long record, byte[] bytes) {
+		long word = arena.getLong(record, TERM);
+		int length = arena.getInt(record, LENGTH);
+		for (int i = 0; i < Math.min(length, bytes.length); i++) {
+			int result = Integer.compare(arena.getByte(word, i) & 0xff, bytes[i] & 0xff);
+			if (result != 0) {
+				return result;
+			}
+		}
+		return Integer.compare(length, bytes.length);
+	}
+
+	/**
+	 * Compares two stored words in place, without copying either of them
+	 *
+	 * @param first  the id of the first word
+	 * @param second the id of the second word
+	 * @return negative, zero or positive like a comparator
+	 */
+	private int compare(int first, int second) {
+		long firstRecord = record(first);
+		long secondRecord = record(second);
+		long firstWord = arena.getLong(firstRecord, TERM);
+		long secondWord = arena.getLong(secondRecord, TERM);
+		int firstLength = arena.getInt(firstRecord, LENGTH);
+		int secondLength = arena.getInt(secondRecord, LENGTH);
+		for (int i = 0; i < Math.min(firstLength, secondLength); i++) {
+			int result = Integer.compare(arena.getByte(firstWord, i) & 0xff, arena.getByte(secondWord, i) & 0xff);
+			if (result != 0) {
+				return result;
+			}
+		}
+		return Integer.compare(firstLength, secondLength);
+	}
+
+	/**
+	 * Checks if a stored word starts with the prefix
+	 *
+	 * @param record the record of the stored word
+	 * @param prefix the bytes of the prefix
+	 * @return true if the word starts with the prefix
+	 */
+	private boolean startsWith(long record, byte[] prefix) {
+		if (arena.getInt(record, LENGTH) < prefix.length) {
+			return false;
+		}
+		long word = arena.getLong(record, TERM);
+		for (int i = 0; i < prefix.length; i++) {
+			if (arena.getByte(word, i) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finds the first word in sorted order that is not less than the bytes
+	 *
+	 * @param bytes the bytes to look for
+	 * @return the index in the sorted list
+	 */
+	private int lowerBound(byte[] bytes) {
+		int low = 0;
+		int high = termCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (compare(record(sorted.getInt(middle * Integer.BYTES)), bytes) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Sorts the words again if any were added since the last prefix search
+	 */
+	private void ensureSorted() {
+		if (sorted != null) {
+			return;
+		}
+		int[] terms = new int[termCount];
+		for (int i = 0; i < terms.length; i++) {
+			terms[i] = i;
+		}
+		mergeSort(terms, new int[terms.length], 0, terms.length);
+
+		sorted = ByteBuffer.allocateDirect(Math.max(1, terms.length) * Integer.BYTES);
+		for (int i = 0; i < terms.length; i++) {
+			sorted.putInt(i * Integer.BYTES, terms[i]);
+		}
+	}
+
+	/**
+	 * Sorts the word ids by their words
+	 *
+	 * @param terms   the ids to sort
+	 * @param scratch space to merge into
+	 * @param from    the first index to sort
+	 * @param to      one past the last index to sort
+	 */
+	private void mergeSort(int[] terms, int[] scratch, int from, int to) {
+		if (to - from < 2) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		mergeSort(terms, scratch, from, middle);
+		mergeSort(terms, scratch, middle, to);
+
+		int left = from;
+		int right = middle;
+		for (int i = from; i < to; i++) {
+			if (right >= to || (left < middle && compare(terms[left], terms[right]) <= 0)) {
+				scratch[i] = terms[left++];
+			} else {
+				scratch[i] = terms[right++];
+			}
+		}
+		System.arraycopy(scratch, from, terms, from, to - from);
+	}
+}
@@ -0,0 +1,147 @@
+/**
+ * Kernels over postings stored as sorted arrays of path ids. The union works on
+ * the first {@code length} ids of its arrays, so the growing arrays of an index
+ * can be passed in without copying them, and writes into an array the caller
+ * gives it. The counts of a query are added up in a {@link Counter}, which
+ * every query on the same thread reuses.
+ *
+ * @author SirIan
+ *
+ */
+public class Postings {
+
+	/**
+	 * Finds the ids in either list, keeping each id once
+	 *
+	 * @param a       the first sorted ids
+	 * @param aLength how many ids of the first array to use
+	 * @param b       the second sorted ids
+	 * @param bLength how many ids of the second array to use
+	 * @param out     where to write the ids, with room for both lists
+	 * @return how many ids were written
+	 */
+	public static int union(int[] a, int aLength, int[] b, int bLength, int[] out) {
+		int i = 0;
+		int j = 0;
+		int size = 0;
+		while (i < aLength && j < bLength) {
+			int x = a[i];
+			int y = b[j];
+			out[size++] = Math.min(x, y);
+			i += x <= y ? 1 : 0;
+			j += y <= x ? 1 : 0;
+		}
+		System.arraycopy(a, i, out, size, aLength - i);
+		size += aLength - i;
+		System.arraycopy(b, j, out, size, bLength - j);
+		return size + bLength - j;
+	}
+
+	/**
+	 * Counts for path ids that are reused by every query on the same thread, so a
+	 * query does not allocate an array the size of the index. The ids that were
+	 * counted are kept in a list in the order they were first counted, so the
+	 * counts are read and cleared by looking only at those ids instead of at
+	 * every path in the index. A thread can only count one query at a time.
+	 */
+	public static class Counter {
+
+		private static final ThreadLocal<Counter> COUNTERS = ThreadLocal.withInitial(Counter::new);
+
+		private int[] counts;
+		private int[] touched;
+		private int size;
+
+		/**
+		 * Initializes a counter with no room
+		 */
+		private Counter() {
+			this.counts = new int[0];
+			this.touched = new int[0];
+			this.size = 0;
+		}
+
+		/**
+		 * Gets the counter of this thread, cleared of the last query and with room
+		 * for every id below the number of documents
+		 *
+		 * @param documents how many documents there are
+		 * @return the counter
+		 */
+		public static Counter get(int documents) {
+			Counter counter = COUNTERS.get();
+			counter.clear();
+			if (counter.counts.length < documents) {
+				int capacity = Math.max(documents, counter.counts.length * 2);
+				counter.counts = new int[capacity];
+				counter.touched = new int[capacity];
+			}
+			return counter;
+		}
+
+		/**
+		 * Adds to the count of an id
+		 *
+		 * @param id    the id to count
+		 * @param value how much to add, which has to be more than 0
+		 */
+		public void add(int id, int value) {
+			if (counts[id] == 0) {
+				touched[size++] = id;
+			}
+			counts[id] += value;
+		}
+
+		/**
+		 * Adds the value of every id to the count of that id
+		 *
+		 * @param ids    the ids to count
+		 * @param values how much to add for each id, each more than 0
+		 * @param length how many ids to use
+		 */
+		public void accumulate(int[] ids, int[] values, int length) {
+			for (int i = 0; i < length; i++) {
+				add(ids[i], values[i]);
+			}
+		}
+
+		/**
+		 * Gets how many ids were counted
+		 *
+		 * @return the number of ids with a count
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Gets one of the ids that were counted
+		 *
+		 * @param index which of the counted ids to get, below {@link #size()}
+		 * @return the id
+		 */
+		public int id(int index) {
+			return touched[index];
+		}
+
+		/**
+		 * Gets the count of an id
+		 *
+		 * @param id the id
+		 * @return the count, or 0 if it was not counted
+		 */
+		public int count(int id) {
+			return counts[id];
+		}
+
+		/**
+		 * Clears the counts of the ids that were counted
+		 */
+		public void clear() {
+			for (int i = 0; i < size; i++) {
+				counts[touched[i]] = 0;
+			}
+			size = 0;
+		}
+	}
+}
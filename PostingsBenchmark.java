@@ -0,0 +1,130 @@
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Times the {@link Postings} kernels on random postings. The union is timed
+ * with the longer list some number of times the length of the shorter one, the
+ * way a rare word and a common word compare. Each kernel is run until it has
+ * been warmed up and then timed over many runs, and the best average is
+ * printed. The counts of one query are timed three ways, each from nothing to
+ * reading every path that was found: a new array for every path that is scanned
+ * in full, the reused {@link Postings.Counter} that only looks at the paths it
+ * counted, and a map.
+ *
+ * usage: java PostingsBenchmark [shorter length] [documents]
+ *
+ * @author SirIan
+ *
+ */
+public class PostingsBenchmark {
+
+	/**
+	 * How many times longer the longer list is in each run.
+	 */
+	private static final int[] RATIOS = { 1, 4, 16, 64, 256 };
+
+	/**
+	 * How many times each kernel is timed.
+	 */
+	private static final int ROUNDS = 5;
+
+	/**
+	 * Keeps the results used so the work is not optimized away.
+	 */
+	private static long sink;
+
+	/**
+	 * Runs the union at every ratio and then the counts
+	 *
+	 * @param args the length of the shorter list and the number of documents
+	 */
+	public static void main(String[] args) {
+		int shorterLength = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int documents = args.length > 1 ? Integer.parseInt(args[1]) : 1 << 20;
+		Random random = new Random(42);
+
+		System.out.printf("%-8s %12s%n", "ratio", "union");
+		for (int ratio : RATIOS) {
+			int[] shorter = postings(random, shorterLength, documents);
+			int[] longer = postings(random, Math.min(shorterLength * ratio, documents / 2), documents);
+			int[] out = new int[shorter.length + longer.length];
+			int operations = Math.max(1, 20000000 / (shorter.length + longer.length));
+
+			double union = time(operations,
+					() -> sink += Postings.union(shorter, shorter.length, longer, longer.length, out));
+			System.out.printf("%-8d %9.1f us%n", ratio, union);
+		}
+
+		int[] ids = postings(random, Math.min(shorterLength * 64, documents / 2), documents);
+		int[] values = random.ints(ids.length, 1, 10).toArray();
+		int operations = Math.max(1, 20000000 / documents);
+		double array = time(operations, () -> {
+			int[] counts = new int[documents];
+			for (int i = 0; i < ids.length; i++) {
+				counts[ids[i]] += values[i];
+			}
+			int found = 0;
+			for (int count : counts) {
+				found += count > 0 ? 1 : 0;
+			}
+			sink += found;
+		});
+		double counter = time(operations, () -> {
+			Postings.Counter counts = Postings.Counter.get(documents);
+			counts.accumulate(ids, values, ids.length);
+			int found = 0;
+			for (int i = 0; i < counts.size(); i++) {
+				found += counts.count(counts.id(i)) > 0 ? 1 : 0;
+			}
+			sink += found;
+		});
+		double map = time(operations, () -> {
+			HashMap<Integer, Integer> counts = new HashMap<>();
+			for (int i = 0; i < ids.length; i++) {
+				counts.merge(ids[i], values[i], Integer::sum);
+			}
+			int found = 0;
+			for (int count : counts.values()) {
+				found += count > 0 ? 1 : 0;
+			}
+			sink += found;
+		});
+		System.out.printf("counts of %d postings in %d documents: new array %.1f us, counter %.1f us, map %.1f us%n",
+				ids.length, documents, array, counter, map);
+		System.out.println(sink == 0 ? "" : "done");
+	}
+
+	/**
+	 * Makes sorted postings with no repeated ids
+	 *
+	 * @param random    where the ids come from
+	 * @param length    how many ids to make
+	 * @param documents how many documents there are to pick from
+	 * @return the sorted ids
+	 */
+	private static int[] postings(Random random, int length, int documents) {
+		return random.ints(0, documents).distinct().limit(length).sorted().toArray();
+	}
+
+	/**
+	 * Times a kernel
+	 *
+	 * @param operations how many times to run it in each round
+	 * @param kernel     the kernel to run
+	 * @return the best average microseconds of one run
+	 */
+	private static double time(int operations, Runnable kernel) {
+		for (int i = 0; i < operations; i++) {
+			kernel.run();
+		}
+		double best = Double.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < operations; i++) {
+				kernel.run();
+			}
+			best = Math.min(best, (System.nanoTime() - start) / 1000.0 / operations);
+		}
+		return best;
+	}
+}
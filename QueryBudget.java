@@ -0,0 +1,161 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * How much work one query is allowed to do. A query can only expand so many
+ * words, collect so many candidate paths and run for so long before the search
+ * stops and returns the best of what it found so far. The budget remembers if
+ * that happened, so the caller can tell a cut short result from a full one.
+ *
+ * A budget is made with the limits and then started once for every query with
+ * {@link #start()}, which sets the deadline and gives the query its own counts.
+ * The counts of a started budget are safe to share between threads, so every
+ * part of a query searched at the same time, such as every shard, takes from
+ * the same budget. {@link #UNLIMITED} never counts anything, so it can be shared
+ * without being started.
+ *
+ * @author SirIan
+ *
+ */
+public class QueryBudget {
+
+	/**
+	 * A budget that never runs out.
+	 */
+	public static final QueryBudget UNLIMITED = new QueryBudget(0, 0, 0);
+
+	private final int maxTerms;
+	private final int maxDocuments;
+	private final long timeoutMillis;
+	private final long deadline;
+
+	private final AtomicInteger terms;
+	private final AtomicInteger documents;
+	private final AtomicBoolean truncated;
+
+	/**
+	 * Initializes the limits of the budget. A limit of 0 means no limit.
+	 *
+	 * @param maxTerms      how many words in the index a query can look at
+	 * @param maxDocuments  how many candidate paths a query can collect
+	 * @param timeoutMillis how many milliseconds a query can run for
+	 */
+	public QueryBudget(int maxTerms, int maxDocuments, long timeoutMillis) {
+		this(maxTerms, maxDocuments, timeoutMillis, 0);
+	}
+
+	/**
+	 * Initializes the budget with a deadline
+	 *
+	 * @param maxTerms      how many words in the index a query can look at
+	 * @param maxDocuments  how many candidate paths a query can collect
+	 * @param timeoutMillis how many milliseconds a query can run for
+	 * @param deadline      the {@link System#nanoTime()} the query has to finish
+	 *                      by, or 0 for no deadline
+	 */
+	private QueryBudget(int maxTerms, int maxDocuments, long timeoutMillis, long deadline) {
+		this.maxTerms = maxTerms;
+		this.maxDocuments = maxDocuments;
+		this.timeoutMillis = timeoutMillis;
+		this.deadline = deadline;
+		this.terms = new AtomicInteger();
+		this.documents = new AtomicInteger();
+		this.truncated = new AtomicBoolean();
+	}
+
+	/**
+	 * Starts a new query with these limits, starting the clock on the deadline
+	 *
+	 * @return the budget of the query
+	 */
+	public QueryBudget start() {
+		return new QueryBudget(maxTerms, maxDocuments, timeoutMillis,
+				timeoutMillis > 0 ? System.nanoTime() + timeoutMillis * 1000000 : 0);
+	}
+
+	/**
+	 * Checks if the budget has any limits at all
+	 *
+	 * @return true if the budget never runs out
+	 */
+	public boolean isUnlimited() {
+		return maxTerms <= 0 && maxDocuments <= 0 && timeoutMillis <= 0;
+	}
+
+	/**
+	 * Gets how long a query can run for
+	 *
+	 * @return the timeout in milliseconds, or 0 for no timeout
+	 */
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * Asks to look at one more word in the index
+	 *
+	 * @return true if the query can look at the word, or false if it is out of
+	 *         words or time
+	 */
+	public boolean allowTerm() {
+		if ((maxTerms > 0 && terms.incrementAndGet() > maxTerms) || expired()) {
+			truncated.set(true);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Asks to collect one more candidate path. Only ask for paths that were not
+	 * collected yet, since every path that is allowed counts against the budget.
+	 *
+	 * @return true if the path can be collected
+	 */
+	public boolean allowDocument() {
+		if (maxDocuments > 0 && documents.incrementAndGet() > maxDocuments) {
+			truncated.set(true);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if the deadline has passed
+	 *
+	 * @return true if the query is out of time
+	 */
+	private boolean expired() {
+		return deadline != 0 && System.nanoTime() - deadline > 0;
+	}
+
+	/**
+	 * Checks if the query was cut short
+	 *
+	 * @return true if any limit was reached
+	 */
+	public boolean isTruncated() {
+		return truncated.get();
+	}
+
+	/**
+	 * Sorts the results that were collected and keeps the best of them
+	 *
+	 * @param results the results that were collected
+	 * @param limit   how many results to keep, or 0 to keep all of them
+	 * @return the sorted results
+	 */
+	public static ArrayList<Results> top(ArrayList<Results> results, int limit) {
+		Collections.sort(results);
+		if (limit > 0 && results.size() > limit) {
+			return new ArrayList<>(results.subList(0, limit));
+		}
+		return results;
+	}
+
+	@Override
+	public String toString() {
+		return "terms " + maxTerms + ", paths " + maxDocuments + ", timeout " + timeoutMillis + " ms";
+	}
+}
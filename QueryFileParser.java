@@ -13,16 +13,43 @@ import opennlp.tools.stemmer.snowball.SnowballStemmer;
 public class QueryFileParser implements QueryParserInterface {
 
 	private final TreeMap<String, ArrayList<Results>> results;
-	private final InvertedIndex invertedIndex;
+	private final InvertedIndexInterface invertedIndex;
+	private final int limit;
+	private final QueryLimiter limiter;
 
 	/**
 	 * Constructor for the QueryFileParser
 	 * 
 	 * @param index InvertedIndex that holds the index of words.
 	 */
-	public QueryFileParser(InvertedIndex index) {
+	public QueryFileParser(InvertedIndexInterface index) {
+		this(index, 0);
+	}
+
+	/**
+	 * Constructor for the QueryFileParser that only keeps the best results of
+	 * every query
+	 * 
+	 * @param index InvertedIndex that holds the index of words.
+	 * @param limit how many results to keep for every query, or 0 to keep all
+	 */
+	public QueryFileParser(InvertedIndexInterface index, int limit) {
+		this(index, limit, new QueryLimiter());
+	}
+
+	/**
+	 * Constructor for the QueryFileParser that searches through a limiter, which
+	 * can turn away or cut short queries that would take too much
+	 * 
+	 * @param index   InvertedIndex that holds the index of words.
+	 * @param limit   how many results to keep for every query, or 0 to keep all
+	 * @param limiter the limiter every search goes through
+	 */
+	public QueryFileParser(InvertedIndexInterface index, int limit, QueryLimiter limiter) {
 		results = new TreeMap<>();
 		this.invertedIndex = index;
+		this.limit = limit;
+		this.limiter = limiter;
 	}
 
 	/**
@@ -53,12 +80,13 @@ public class QueryFileParser implements QueryParserInterface {
 		TextFileStemmer.stemLine(line, stemmer, queryWords);
 		String queryLine = String.join(" ", queryWords);
 		if (!results.containsKey(queryLine) && !queryLine.equals("")) {
-			results.put(String.join(" ", queryWords), this.invertedIndex.searchIndex(queryWords, exact));
+			results.put(String.join(" ", queryWords), limiter.search(this.invertedIndex, queryWords, exact, limit));
 		}
 	}
 
 	/**
-	 * This will write a json at the path it was given.
+	 * This will write a json at the path it was given. The results of queries that
+	 * were cut short or turned away are written with their status.
 	 * 
 	 * @param path    the path it writes to
 	 * @param isIndex boolean that checks if this writer should write for the index
@@ -0,0 +1,126 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets only so many queries search at the same time and gives each of them a
+ * {@link QueryBudget}. A query that can not start before its timeout is over is
+ * rejected with no results, and a query that goes over its budget keeps the
+ * best results it found. Either way the results say so, and are written with
+ * their status, so an empty or short answer is never mistaken for a full one.
+ * One limiter can be shared by every query parser, so the limit holds for the
+ * whole program.
+ *
+ * @author SirIan
+ *
+ */
+public class QueryLimiter {
+
+	private final QueryBudget budget;
+	private final Semaphore permits;
+
+	private final AtomicLong searched;
+	private final AtomicLong truncated;
+	private final AtomicLong rejected;
+
+	/**
+	 * Initializes a limiter that lets every query run to the end
+	 */
+	public QueryLimiter() {
+		this(QueryBudget.UNLIMITED, 0);
+	}
+
+	/**
+	 * Initializes the limiter
+	 *
+	 * @param budget     the budget every query gets
+	 * @param concurrent how many queries can search at the same time, or 0 for no
+	 *                   limit
+	 */
+	public QueryLimiter(QueryBudget budget, int concurrent) {
+		this.budget = budget;
+		this.permits = concurrent > 0 ? new Semaphore(concurrent, true) : null;
+		this.searched = new AtomicLong();
+		this.truncated = new AtomicLong();
+		this.rejected = new AtomicLong();
+	}
+
+	/**
+	 * Searches the index once the query is let in, within the budget
+	 *
+	 * @param index       the index to search
+	 * @param queryWords  the words to look for
+	 * @param exactSearch a boolean to see if the exact flag is passed in
+	 * @param limit       how many results to keep, or 0 to keep all of them
+	 * @return the best results found and how far the query got
+	 */
+	public QueryResults search(InvertedIndexInterface index, Collection<String> queryWords, boolean exactSearch,
+			int limit) {
+		QueryBudget started = budget.start();
+		if (!admit()) {
+			rejected.incrementAndGet();
+			return new QueryResults(QueryResults.Status.REJECTED);
+		}
+		try {
+			ArrayList<Results> results = index.searchIndex(queryWords, exactSearch, limit, started);
+			if (started.isTruncated()) {
+				truncated.incrementAndGet();
+				return new QueryResults(results, QueryResults.Status.TRUNCATED);
+			}
+			return new QueryResults(results, QueryResults.Status.COMPLETE);
+		} finally {
+			searched.incrementAndGet();
+			if (permits != null) {
+				permits.release();
+			}
+		}
+	}
+
+	/**
+	 * Waits for a turn to search. With a timeout in the budget the query only
+	 * waits that long, otherwise it waits as long as it takes.
+	 *
+	 * @return true if the query can search
+	 */
+	private boolean admit() {
+		if (permits == null) {
+			return true;
+		}
+		try {
+			if (budget.getTimeoutMillis() > 0) {
+				return permits.tryAcquire(budget.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+			}
+			permits.acquire();
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Gets how many queries went over their budget
+	 *
+	 * @return the number of truncated queries
+	 */
+	public long getTruncated() {
+		return truncated.get();
+	}
+
+	/**
+	 * Gets how many queries were turned away because too many were searching
+	 *
+	 * @return the number of rejected queries
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	@Override
+	public String toString() {
+		return searched.get() + " searched, " + truncated.get() + " truncated, " + rejected.get() + " rejected ("
+				+ budget + ")";
+	}
+}
@@ -0,0 +1,85 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * The results of one query, along with whether the query got to run to the end.
+ * A query that went over its {@link QueryBudget} keeps the best results it
+ * found, and a query the {@link QueryLimiter} turned away has none, so the
+ * results written for it have to say which it was.
+ *
+ * @author SirIan
+ *
+ */
+public class QueryResults extends ArrayList<Results> {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * How far a query got.
+	 */
+	public enum Status {
+		/**
+		 * The query ran to the end, so the results are all of them.
+		 */
+		COMPLETE,
+
+		/**
+		 * The query went over its budget, so the results are only the best of what
+		 * it found.
+		 */
+		TRUNCATED,
+
+		/**
+		 * The query was turned away before it could search, so there are no
+		 * results.
+		 */
+		REJECTED;
+
+		@Override
+		public String toString() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	private final Status status;
+
+	/**
+	 * Initializes the results of a query that has no results
+	 *
+	 * @param status how far the query got
+	 */
+	public QueryResults(Status status) {
+		super();
+		this.status = status;
+	}
+
+	/**
+	 * Initializes the results of a query
+	 *
+	 * @param results the sorted results
+	 * @param status  how far the query got
+	 */
+	public QueryResults(Collection<Results> results, Status status) {
+		super(results);
+		this.status = status;
+	}
+
+	/**
+	 * Gets how far the query got
+	 *
+	 * @return the status of the query
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * Checks if the results are all of them
+	 *
+	 * @return true if the query ran to the end
+	 */
+	public boolean isComplete() {
+		return status == Status.COMPLETE;
+	}
+}
@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+/**
+ * Times how many queries a second {@link MultiThreadQueryParser} searches with
+ * different numbers of threads. The index is built once and shared by every
+ * run, and each run searches the whole query file with a new parser, since a
+ * parser only searches a query once. Throughput is counted in the lines of the
+ * query file that are not blank, so a query that is repeated in the file counts
+ * every time even though it is only searched once. Each thread count is run
+ * until it has been warmed up and then timed over many runs, and the best run
+ * is printed along with how much faster it is than the first thread count.
+ *
+ * usage: java QueryThroughputBenchmark [text path] [query file] [-exact]
+ * [thread counts...]
+ *
+ * @author SirIan
+ *
+ */
+public class QueryThroughputBenchmark {
+
+	/**
+	 * The thread counts that are timed when none are given.
+	 */
+	private static final int[] THREADS = { 1, 2, 4, 8 };
+
+	/**
+	 * How many times the queries are searched before the timing starts.
+	 */
+	private static final int WARMUP = 50;
+
+	/**
+	 * How many times the queries are timed for each thread count.
+	 */
+	private static final int ROUNDS = 10;
+
+	/**
+	 * Builds the index and times the queries at every thread count
+	 *
+	 * @param args the text path, the query file, -exact for exact search and the
+	 *             thread counts
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println(
+					"usage: java QueryThroughputBenchmark [text path] [query file] [-exact] [thread counts...]");
+			return;
+		}
+		Path text = Paths.get(args[0]);
+		Path queries = Paths.get(args[1]);
+		boolean exact = args.length > 2 && args[2].equals("-exact");
+		int first = exact ? 3 : 2;
+		int[] threads = THREADS;
+		if (args.length > first) {
+			threads = new int[args.length - first];
+			for (int i = first; i < args.length; i++) {
+				threads[i - first] = Integer.parseInt(args[i]);
+			}
+		}
+
+		ThreadSafeInvertedIndex index = new ThreadSafeInvertedIndex();
+		FileReader.readFiles(text, index);
+		long count = count(queries);
+		System.out.printf("%d words, %d queries, %s search%n", index.getSize(), count, exact ? "exact" : "partial");
+		System.out.printf("%-8s %12s %14s %8s%n", "threads", "best", "queries/s", "speedup");
+
+		double baseline = 0;
+		for (int threadCount : threads) {
+			WorkQueue queue = new WorkQueue(threadCount);
+			try {
+				for (int i = 0; i < WARMUP; i++) {
+					new MultiThreadQueryParser(index, queue).readQueries(queries, exact);
+				}
+				long best = Long.MAX_VALUE;
+				for (int round = 0; round < ROUNDS; round++) {
+					MultiThreadQueryParser parser = new MultiThreadQueryParser(index, queue);
+					long start = System.nanoTime();
+					parser.readQueries(queries, exact);
+					best = Math.min(best, System.nanoTime() - start);
+				}
+				double perSecond = count / (best / 1e9);
+				if (baseline == 0) {
+					baseline = perSecond;
+				}
+				System.out.printf("%-8d %9.2f ms %14.0f %7.2fx%n", threadCount, best / 1e6, perSecond,
+						perSecond / baseline);
+			} finally {
+				queue.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Counts the lines of the query file that are not blank
+	 *
+	 * @param queries the query file
+	 * @return how many queries are in the file
+	 * @throws IOException
+	 */
+	private static long count(Path queries) throws IOException {
+		try (Stream<String> lines = Files.lines(queries, StandardCharsets.UTF_8)) {
+			return lines.filter(line -> !line.isBlank()).count();
+		}
+	}
+}
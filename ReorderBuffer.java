@@ -0,0 +1,128 @@
+import java.util.HashMap;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Puts items that are finished out of order back in the order they were
+ * started. Every item takes a sequence number when it is started, and once the
+ * item with the next number is finished, it and every finished item after it
+ * are handed to the consumer in order. Only so many items can be started ahead
+ * of the oldest one that is not finished, so a slow item holds back the rest
+ * instead of letting the buffer grow. The buffer can also be given a weight for
+ * every item, such as how many results it holds, and then no more items are
+ * started while the finished items waiting on a slow one weigh too much.
+ *
+ * The consumer is only ever called by one thread at a time, by whichever thread
+ * finished the item that was holding the others back. It should not throw.
+ *
+ * @author SirIan
+ *
+ * @param <T> the type of the items
+ */
+public class ReorderBuffer<T> {
+
+	private final int capacity;
+	private final long maxWeight;
+	private final ToIntFunction<T> weigher;
+	private final Consumer<T> consumer;
+	private final HashMap<Long, T> finished;
+
+	private long started;
+	private long next;
+	private long weight;
+	private boolean emitting;
+
+	/**
+	 * Initializes the buffer
+	 *
+	 * @param capacity how many items can be started ahead of the oldest one that
+	 *                 is not finished
+	 * @param consumer what to hand the items to, in order
+	 */
+	public ReorderBuffer(int capacity, Consumer<T> consumer) {
+		this(capacity, 0, item -> 0, consumer);
+	}
+
+	/**
+	 * Initializes the buffer with a limit on how much the finished items waiting
+	 * to be handed on can weigh
+	 *
+	 * @param capacity  how many items can be started ahead of the oldest one that
+	 *                  is not finished
+	 * @param maxWeight how much the waiting items can weigh before no more items
+	 *                  are started, or 0 for no limit
+	 * @param weigher   how much an item weighs
+	 * @param consumer  what to hand the items to, in order
+	 */
+	public ReorderBuffer(int capacity, long maxWeight, ToIntFunction<T> weigher, Consumer<T> consumer) {
+		this.capacity = capacity;
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+		this.consumer = consumer;
+		this.finished = new HashMap<>();
+		this.started = 0;
+		this.next = 0;
+		this.weight = 0;
+		this.emitting = false;
+	}
+
+	/**
+	 * Starts an item, waiting until there is room for it
+	 *
+	 * @return the sequence number of the item
+	 * @throws InterruptedException if interrupted while waiting for room
+	 */
+	public synchronized long start() throws InterruptedException {
+		while (started - next >= capacity || (maxWeight > 0 && weight >= maxWeight)) {
+			wait();
+		}
+		return started++;
+	}
+
+	/**
+	 * Finishes an item, handing it and every finished item after it to the
+	 * consumer if it was the one holding them back
+	 *
+	 * @param sequence the sequence number the item got when it was started
+	 * @param item     the finished item, or null if there is nothing to hand on
+	 */
+	public void finish(long sequence, T item) {
+		synchronized (this) {
+			finished.put(sequence, item);
+			if (item != null) {
+				weight += weigher.applyAsInt(item);
+			}
+			if (emitting || sequence != next) {
+				return;
+			}
+			emitting = true;
+		}
+		while (true) {
+			T ready;
+			synchronized (this) {
+				if (!finished.containsKey(next)) {
+					emitting = false;
+					return;
+				}
+				ready = finished.remove(next);
+				if (ready != null) {
+					weight -= weigher.applyAsInt(ready);
+				}
+				next++;
+				notifyAll();
+			}
+			if (ready != null) {
+				consumer.accept(ready);
+			}
+		}
+	}
+
+	/**
+	 * Gets how many items are started but not handed on yet
+	 *
+	 * @return the number of items in the buffer
+	 */
+	public synchronized int size() {
+		return (int) (started - next);
+	}
+}
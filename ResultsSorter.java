@@ -0,0 +1,385 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Sorts the results of any number of queries by query in bounded memory. The
+ * results of each query are turned into JSON by {@link TreeJSONWriter} as soon
+ * as they are added, so they are written the same way as results that were
+ * never streamed, and once too many results are held, the sorted queries are
+ * written to a run file and dropped from memory. The runs and whatever is still
+ * in memory are merged when the results are written, so only one query from
+ * every run is held at a time. Once there are too many runs to open at once,
+ * they are merged into one run. A query that is added more than once keeps the
+ * results it was first added with. The results of a query that was cut short or
+ * turned away are written along with their {@link QueryResults.Status}.
+ *
+ * @author SirIan
+ *
+ */
+public class ResultsSorter implements Closeable {
+
+	/**
+	 * How many results are held in memory by default before they are written to
+	 * a run.
+	 */
+	public static final int DEFAULT_MEMORY = 1 << 16;
+
+	/**
+	 * How many runs there can be before they are merged into one.
+	 */
+	public static final int MERGE_FACTOR = 64;
+
+	private final int memory;
+	private final TreeMap<String, String> buffer;
+	private final ArrayList<Path> runs;
+
+	private int buffered;
+	private int spills;
+	private int written;
+	private Path directory;
+
+	/**
+	 * Initializes the sorter
+	 *
+	 * @param memory how many results to hold before writing them to a run
+	 */
+	public ResultsSorter(int memory) {
+		this.memory = Math.max(1, memory);
+		this.buffer = new TreeMap<>();
+		this.runs = new ArrayList<>();
+		this.buffered = 0;
+		this.spills = 0;
+		this.written = 0;
+		this.directory = null;
+	}
+
+	/**
+	 * Adds the results of a query, unless the query is already in memory
+	 *
+	 * @param query   the stemmed query
+	 * @param results the sorted results of the query
+	 * @throws IOException if the results could not be written to a run
+	 */
+	public void add(String query, List<Results> results) throws IOException {
+		if (buffer.containsKey(query)) {
+			return;
+		}
+		StringWriter json = new StringWriter();
+		TreeJSONWriter.asQueryResults(results, json, 1);
+		buffer.put(query, json.toString());
+		buffered += results.size() + 1;
+		if (buffered >= memory) {
+			spill();
+		}
+	}
+
+	/**
+	 * Checks if the results of a query are still in memory, so a query that is
+	 * added again can be skipped before it is searched
+	 *
+	 * @param query the stemmed query
+	 * @return true if the query is in memory
+	 */
+	public boolean isBuffered(String query) {
+		return buffer.containsKey(query);
+	}
+
+	/**
+	 * Gets how many times the results in memory were written to a run
+	 *
+	 * @return the number of runs written, not counting merged runs
+	 */
+	public int getRuns() {
+		return spills;
+	}
+
+	/**
+	 * Writes every query in memory to a new run, sorted by query
+	 *
+	 * @throws IOException
+	 */
+	private void spill() throws IOException {
+		if (directory == null) {
+			directory = Files.createTempDirectory("query-runs");
+		}
+		Path run = directory.resolve("run-" + written++);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+			for (Map.Entry<String, String> entry : buffer.entrySet()) {
+				writeString(out, entry.getKey());
+				writeString(out, entry.getValue());
+			}
+		}
+		runs.add(run);
+		spills++;
+		buffer.clear();
+		buffered = 0;
+		if (runs.size() >= MERGE_FACTOR) {
+			compact();
+		}
+	}
+
+	/**
+	 * Writes every query and its results as JSON, sorted by query. The runs are
+	 * kept, so the results can be written again.
+	 *
+	 * @param path the path it writes to
+	 * @throws IOException
+	 */
+	public void toJSON(Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			writer.write("{");
+			boolean[] first = { true };
+			merge(runs, buffer.entrySet().iterator(), (query, json) -> {
+				writer.write(first[0] ? System.lineSeparator() : "," + System.lineSeparator());
+				TreeJSONWriter.indent(writer, 1);
+				TreeJSONWriter.quote(query, writer);
+				writer.write(": " + json);
+				first[0] = false;
+			});
+			writer.write(System.lineSeparator() + "}");
+		}
+	}
+
+	/**
+	 * Merges every run into one, so there are never more than
+	 * {@link #MERGE_FACTOR} runs to open at the same time
+	 *
+	 * @throws IOException
+	 */
+	private void compact() throws IOException {
+		Path merged = directory.resolve("run-" + written++);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(merged)))) {
+			merge(runs, Collections.emptyIterator(), (query, json) -> {
+				writeString(out, query);
+				writeString(out, json);
+			});
+		}
+		for (Path run : runs) {
+			Files.delete(run);
+		}
+		runs.clear();
+		runs.add(merged);
+	}
+
+	/**
+	 * Merges sorted runs and sorted queries in memory, handing every query to the
+	 * output once, with the results from the earliest run it is in
+	 *
+	 * @param inputs the runs, from the earliest
+	 * @param memory the queries in memory, which come after every run
+	 * @param output where to hand the queries
+	 * @throws IOException
+	 */
+	private static void merge(List<Path> inputs, Iterator<Map.Entry<String, String>> memory, Output output)
+			throws IOException {
+		ArrayList<Run> open = new ArrayList<>();
+		try {
+			PriorityQueue<Cursor> cursors = new PriorityQueue<>();
+			for (int i = 0; i < inputs.size(); i++) {
+				Run run = new Run(inputs.get(i));
+				open.add(run);
+				Cursor.add(cursors, new Cursor(run, i));
+			}
+			Cursor.add(cursors, new Cursor(memory, inputs.size()));
+
+			String last = null;
+			while (!cursors.isEmpty()) {
+				Cursor cursor = cursors.poll();
+				String query = cursor.current.getKey();
+				if (!query.equals(last)) {
+					output.write(query, cursor.current.getValue());
+					last = query;
+				}
+				Cursor.add(cursors, cursor);
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			for (Run run : open) {
+				run.close();
+			}
+		}
+	}
+
+	/**
+	 * Deletes the runs
+	 */
+	@Override
+	public void close() throws IOException {
+		for (Path run : runs) {
+			Files.deleteIfExists(run);
+		}
+		runs.clear();
+		if (directory != null) {
+			Files.deleteIfExists(directory);
+			directory = null;
+		}
+	}
+
+	/**
+	 * Writes a string of any length
+	 *
+	 * @param out  the stream to write to
+	 * @param text the string to write
+	 * @throws IOException
+	 */
+	private static void writeString(DataOutputStream out, String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string written by {@link #writeString(DataOutputStream, String)}
+	 *
+	 * @param in the stream to read from
+	 * @return the string
+	 * @throws IOException
+	 */
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Where merged queries are handed.
+	 */
+	private interface Output {
+
+		/**
+		 * Takes the next query
+		 *
+		 * @param query the query
+		 * @param json  the results of the query as a JSON array
+		 * @throws IOException
+		 */
+		void write(String query, String json) throws IOException;
+	}
+
+	/**
+	 * Reads the queries of a run back one at a time.
+	 */
+	private static class Run implements Iterator<Map.Entry<String, String>>, Closeable {
+
+		private final DataInputStream in;
+		private Map.Entry<String, String> next;
+
+		/**
+		 * Opens a run and reads its first query
+		 *
+		 * @param path the run to read
+		 * @throws IOException
+		 */
+		public Run(Path path) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+			this.next = read();
+		}
+
+		/**
+		 * Reads the next query of the run
+		 *
+		 * @return the query and its results, or null at the end of the run
+		 * @throws IOException
+		 */
+		private Map.Entry<String, String> read() throws IOException {
+			String query;
+			try {
+				query = readString(in);
+			} catch (EOFException e) {
+				return null;
+			}
+			return new AbstractMap.SimpleImmutableEntry<>(query, readString(in));
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public Map.Entry<String, String> next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			Map.Entry<String, String> current = next;
+			try {
+				next = read();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return current;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/**
+	 * The current query of one run, or of the queries still in memory. Cursors
+	 * are ordered by query and then by when their queries were added, so the
+	 * first results a query was added with come first.
+	 */
+	private static class Cursor implements Comparable<Cursor> {
+
+		private final Iterator<Map.Entry<String, String>> entries;
+		private final int order;
+		private Map.Entry<String, String> current;
+
+		/**
+		 * Initializes a cursor before the first query
+		 *
+		 * @param entries the sorted queries and their results
+		 * @param order   when the queries were added, earlier being lower
+		 */
+		public Cursor(Iterator<Map.Entry<String, String>> entries, int order) {
+			this.entries = entries;
+			this.order = order;
+		}
+
+		/**
+		 * Moves the cursor to its next query and puts it back in the queue, unless
+		 * it has no queries left
+		 *
+		 * @param cursors the queue of cursors
+		 * @param cursor  the cursor to move
+		 */
+		public static void add(PriorityQueue<Cursor> cursors, Cursor cursor) {
+			if (cursor.entries.hasNext()) {
+				cursor.current = cursor.entries.next();
+				cursors.add(cursor);
+			}
+		}
+
+		@Override
+		public int compareTo(Cursor other) {
+			int result = current.getKey().compareTo(other.current.getKey());
+			if (result == 0) {
+				result = Integer.compare(order, other.order);
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,1039 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An inverted index built out of segments, like a log structured merge tree.
+ * New documents go into a small in memory index. When it holds enough words it
+ * is flushed into an immutable segment of sorted arrays, and a background thread
+ * merges segments of about the same size together so there are never too many
+ * to search. Searches look at the in memory index and every segment and add up
+ * the counts for each path.
+ *
+ * Removed paths are only marked as deleted in the segments that have them, and
+ * are dropped for good when those segments are merged. Positions of a path
+ * that are already in a segment are left out when the path is added to again,
+ * so they are only counted once.
+ *
+ * @author SirIan
+ *
+ */
+public class SegmentedInvertedIndex implements InvertedIndexInterface {
+
+	/**
+	 * How many positions the in memory index holds before it is flushed.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * How many segments of about the same size are merged together.
+	 */
+	public static final int DEFAULT_MERGE_FACTOR = 4;
+
+	/**
+	 * How many segments there can be before the smallest are merged no matter
+	 * their size.
+	 */
+	public static final int DEFAULT_MAX_SEGMENTS = 16;
+
+	private final int bufferSize;
+	private final int mergeFactor;
+	private final int maxSegments;
+
+	private final ReadWriteLock lock;
+	private InvertedIndex buffer;
+	private int buffered;
+	private volatile ArrayList<Segment> segments;
+	private final DocumentRegistry documents;
+	private int[] totals;
+
+	private final ExecutorService merger;
+	private boolean merging;
+
+	private final AtomicLong queries;
+	private final AtomicLong queryNanos;
+	private final AtomicLong maxQueryNanos;
+
+	/**
+	 * Initializes the index with the default sizes.
+	 */
+	public SegmentedInvertedIndex() {
+		this(DEFAULT_BUFFER_SIZE, DEFAULT_MERGE_FACTOR, DEFAULT_MAX_SEGMENTS);
+	}
+
+	/**
+	 * Initializes the index.
+	 *
+	 * @param bufferSize  how many positions the in memory index holds before it is
+	 *                    flushed to a segment
+	 * @param mergeFactor how many segments of about the same size are merged
+	 *                    together
+	 * @param maxSegments how many segments there can be before the smallest are
+	 *                    merged no matter their size
+	 */
+	public SegmentedInvertedIndex(int bufferSize, int mergeFactor, int maxSegments) {
+		this.bufferSize = Math.max(1, bufferSize);
+		this.mergeFactor = Math.max(2, mergeFactor);
+		this.maxSegments = Math.max(this.mergeFactor, maxSegments);
+		this.lock = new ReadWriteLock();
+		this.documents = new DocumentRegistry();
+		this.buffer = new InvertedIndex(documents);
+		this.buffered = 0;
+		this.segments = new ArrayList<>();
+		this.totals = new int[16];
+		this.merger = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "segment-merger");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.merging = false;
+		this.queries = new AtomicLong();
+		this.queryNanos = new AtomicLong();
+		this.maxQueryNanos = new AtomicLong();
+	}
+
+	@Override
+	public boolean add(String word, int position, String path) {
+		lock.lockReadWrite();
+		try {
+			int id = documents.getId(path);
+			if (id >= 0 && flushed(word, id, position)) {
+				return false;
+			}
+			if (!buffer.add(word, position, path)) {
+				return false;
+			}
+			count(documents.getId(path), 1);
+			buffered++;
+			flushIfFull();
+			return true;
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	@Override
+	public boolean addAll(String[] text, String path, int start) {
+		TreeMap<String, TreeSet<Integer>> document = new TreeMap<>();
+		for (String word : text) {
+			document.putIfAbsent(word, new TreeSet<>());
+			document.get(word).add(start++);
+		}
+		return addDocument(path, document);
+	}
+
+	@Override
+	public boolean addDocument(String path, Map<String, ? extends Collection<Integer>> document) {
+		lock.lockReadWrite();
+		try {
+			return addDocumentHelper(path, document);
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	/**
+	 * Adds a document to the in memory index while the write lock is held
+	 *
+	 * @param path     The file the words were from
+	 * @param document the words in the file mapped to the positions they were
+	 *                 found
+	 * @return true if this index is changed as a result of the call
+	 */
+	private boolean addDocumentHelper(String path, Map<String, ? extends Collection<Integer>> document) {
+		int id = documents.getId(path);
+		if (id >= 0 && inSegments(id)) {
+			TreeMap<String, TreeSet<Integer>> fresh = new TreeMap<>();
+			for (Map.Entry<String, ? extends Collection<Integer>> entry : document.entrySet()) {
+				for (int position : entry.getValue()) {
+					if (!flushed(entry.getKey(), id, position)) {
+						fresh.putIfAbsent(entry.getKey(), new TreeSet<>());
+						fresh.get(entry.getKey()).add(position);
+					}
+				}
+			}
+			document = fresh;
+		}
+
+		int before = buffer.getTotal(path);
+		if (!buffer.addDocument(path, document)) {
+			return false;
+		}
+		int added = buffer.getTotal(path) - before;
+		count(documents.getId(path), added);
+		buffered += added;
+		flushIfFull();
+		return true;
+	}
+
+	/**
+	 * Checks if a live path is in any segment
+	 *
+	 * @param id the id of the path
+	 * @return true if a segment has the path and it is not deleted there
+	 */
+	private boolean inSegments(int id) {
+		for (Segment segment : segments) {
+			if (segment.has(id)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if a position of a word in a live path is already in a segment
+	 *
+	 * @param word     the word
+	 * @param id       the id of the path
+	 * @param position the position of the word
+	 * @return true if a segment already has the position
+	 */
+	private boolean flushed(String word, int id, int position) {
+		for (Segment segment : segments) {
+			if (segment.contains(word, id, position)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds to the number of words in a path
+	 *
+	 * @param id    the id of the path
+	 * @param added how many words were added
+	 */
+	private void count(int id, int added) {
+		if (id >= totals.length) {
+			totals = Arrays.copyOf(totals, Math.max(totals.length * 2, id + 1));
+		}
+		totals[id] += added;
+	}
+
+	@Override
+	public boolean removeDocument(String path) {
+		lock.lockReadWrite();
+		try {
+			return removeDocumentHelper(path);
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	/**
+	 * Removes a document while the write lock is held
+	 *
+	 * @param path the file to remove
+	 * @return true if the path was in the index
+	 */
+	private boolean removeDocumentHelper(String path) {
+		int id = documents.getId(path);
+		if (id < 0 || id >= totals.length || totals[id] == 0) {
+			return false;
+		}
+		totals[id] = 0;
+		buffer.removeDocument(path);
+		for (Segment segment : segments) {
+			if (segment.documents.get(id)) {
+				segment.deleted.add(id);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Replaces a document in one step, so no search sees the path missing or
+	 * half added.
+	 */
+	@Override
+	public boolean replaceDocument(String path, Map<String, ? extends Collection<Integer>> document) {
+		lock.lockReadWrite();
+		try {
+			boolean removed = removeDocumentHelper(path);
+			return addDocumentHelper(path, document) || removed;
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	/**
+	 * Turns the in memory index into a segment once it is full and asks the merger
+	 * to look at the segments. Must be called with the write lock held.
+	 */
+	private void flushIfFull() {
+		if (buffered < bufferSize) {
+			return;
+		}
+		ArrayList<Segment> flushed = new ArrayList<>(segments);
+		flushed.add(Segment.of(buffer));
+		segments = flushed;
+		buffer = new InvertedIndex(documents);
+		buffered = 0;
+		scheduleMerge();
+	}
+
+	/**
+	 * Flushes whatever is in the in memory index to a segment now.
+	 */
+	public void flush() {
+		lock.lockReadWrite();
+		try {
+			if (buffered > 0) {
+				buffered = bufferSize;
+				flushIfFull();
+			}
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	/**
+	 * Starts the merger if it is not already running
+	 */
+	private synchronized void scheduleMerge() {
+		if (!merging) {
+			merging = true;
+			merger.execute(this::mergeSegments);
+		}
+	}
+
+	/**
+	 * Keeps merging segments until the merge policy is happy.
+	 */
+	private void mergeSegments() {
+		while (true) {
+			ArrayList<Segment> current = segments;
+
+			ArrayList<Segment> chosen = choose(current);
+			if (chosen == null) {
+				synchronized (this) {
+					if (segments == current) {
+						merging = false;
+						return;
+					}
+				}
+				continue;
+			}
+
+			HashMap<Segment, HashSet<Integer>> deletedBefore = new HashMap<>();
+			for (Segment segment : chosen) {
+				deletedBefore.put(segment, new HashSet<>(segment.deleted));
+			}
+			Segment merged = Segment.merge(chosen);
+
+			lock.lockReadWrite();
+			try {
+				for (Segment segment : chosen) {
+					for (int id : segment.deleted) {
+						if (!deletedBefore.get(segment).contains(id) && merged.documents.get(id)) {
+							merged.deleted.add(id);
+						}
+					}
+				}
+				ArrayList<Segment> replaced = new ArrayList<>();
+				boolean added = false;
+				for (Segment segment : segments) {
+					if (chosen.contains(segment)) {
+						if (!added) {
+							replaced.add(merged);
+							added = true;
+						}
+					} else {
+						replaced.add(segment);
+					}
+				}
+				segments = replaced;
+			} finally {
+				lock.unlockReadWrite();
+			}
+		}
+	}
+
+	/**
+	 * Picks the segments to merge next. Segments are put in tiers by size, where
+	 * each tier is {@code mergeFactor} times bigger than the last, and a tier is
+	 * merged once it has {@code mergeFactor} segments. If there are still too
+	 * many segments, the smallest ones are merged.
+	 *
+	 * @param current the live segments, oldest first
+	 * @return the segments to merge, or null if nothing needs merging
+	 */
+	private ArrayList<Segment> choose(ArrayList<Segment> current) {
+		TreeMap<Integer, ArrayList<Segment>> tiers = new TreeMap<>();
+		for (Segment segment : current) {
+			int tier = 0;
+			for (long size = segment.size; size >= (long) bufferSize * mergeFactor; size /= mergeFactor) {
+				tier++;
+			}
+			tiers.putIfAbsent(tier, new ArrayList<>());
+			tiers.get(tier).add(segment);
+		}
+		for (ArrayList<Segment> tier : tiers.values()) {
+			if (tier.size() >= mergeFactor) {
+				return new ArrayList<>(tier.subList(0, mergeFactor));
+			}
+		}
+
+		if (current.size() > maxSegments) {
+			ArrayList<Segment> smallest = new ArrayList<>(current);
+			smallest.sort((first, second) -> Long.compare(first.size, second.size));
+			return new ArrayList<>(smallest.subList(0, mergeFactor));
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the number of live segments
+	 *
+	 * @return the number of segments
+	 */
+	public int getSegmentCount() {
+		lock.lockReadOnly();
+		try {
+			return segments.size();
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public ArrayList<Results> exactSearch(Collection<String> queryWords) {
+		return search(queryWords, true, 0, QueryBudget.UNLIMITED);
+	}
+
+	@Override
+	public ArrayList<Results> partialSearch(Collection<String> queryWords) {
+		return search(queryWords, false, 0, QueryBudget.UNLIMITED);
+	}
+
+	@Override
+	public ArrayList<Results> searchIndex(Collection<String> queryWords, boolean exactSearch, int limit) {
+		return search(queryWords, exactSearch, limit, QueryBudget.UNLIMITED);
+	}
+
+	/**
+	 * Searches for the best results without going over the budget. Every segment
+	 * a word is found in counts as one word against the budget.
+	 */
+	@Override
+	public ArrayList<Results> searchIndex(Collection<String> queryWords, boolean exactSearch, int limit,
+			QueryBudget budget) {
+		return search(queryWords, exactSearch, limit, budget);
+	}
+
+	/**
+	 * Searches the in memory index and every segment, adding up the counts for
+	 * each path, and keeps track of how long the search took. The counts are kept
+	 * in the {@link Postings.Counter} of the thread, so the sorted postings of the
+	 * segments are added with no boxing and only the paths the query found are
+	 * looked at afterwards.
+	 *
+	 * @param queryWords  the words to look for
+	 * @param exactSearch a boolean to see if the exact flag is passed in
+	 * @param limit       how many results to keep, or 0 to keep all of them
+	 * @param budget      the started budget of the query
+	 * @return the sorted results
+	 */
+	private ArrayList<Results> search(Collection<String> queryWords, boolean exactSearch, int limit,
+			QueryBudget budget) {
+		long start = System.nanoTime();
+		ArrayList<Results> results = new ArrayList<>();
+		lock.lockReadOnly();
+		try {
+			Postings.Counter counts = Postings.Counter.get(documents.size());
+			if (budget.isUnlimited()) {
+				for (String word : buffer.matchingWords(queryWords, exactSearch)) {
+					for (Map.Entry<Integer, TreeSet<Integer>> entry : buffer.getLocations(word).entrySet()) {
+						counts.add(entry.getKey(), entry.getValue().size());
+					}
+				}
+				for (Segment segment : segments) {
+					segment.accumulate(queryWords, exactSearch, counts);
+				}
+			} else {
+				for (String query : queryWords) {
+					if (!count(query, exactSearch, counts, budget)) {
+						break;
+					}
+				}
+				for (Segment segment : segments) {
+					segment.count(queryWords, exactSearch, counts, budget);
+				}
+			}
+
+			results.ensureCapacity(counts.size());
+			for (int i = 0; i < counts.size(); i++) {
+				int id = counts.id(i);
+				results.add(new Results(documents.getPath(id), counts.count(id), totals[id]));
+			}
+		} finally {
+			lock.unlockReadOnly();
+		}
+		results = QueryBudget.top(results, limit);
+
+		long elapsed = System.nanoTime() - start;
+		queries.incrementAndGet();
+		queryNanos.addAndGet(elapsed);
+		maxQueryNanos.accumulateAndGet(elapsed, Math::max);
+		return results;
+	}
+
+	/**
+	 * Adds the counts of the words in the in memory index matching one query
+	 * word, walking the words only as far as the budget lets it
+	 *
+	 * @param query       the query word
+	 * @param exactSearch a boolean to see if the exact flag is passed in
+	 * @param counts      the counts for each path id
+	 * @param budget      the budget of the query
+	 * @return false if the budget ran out of words or time
+	 */
+	private boolean count(String query, boolean exactSearch, Postings.Counter counts, QueryBudget budget) {
+		for (String word : buffer.getWords(query)) {
+			if (exactSearch ? !word.equals(query) : !word.startsWith(query)) {
+				break;
+			}
+			if (!budget.allowTerm()) {
+				return false;
+			}
+			for (Map.Entry<Integer, TreeSet<Integer>> entry : buffer.getLocations(word).entrySet()) {
+				add(counts, entry.getKey(), entry.getValue().size(), budget);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds to the count of a path, unless it is a new path and the budget has no
+	 * room for it
+	 *
+	 * @param counts the counts for each path id
+	 * @param path   the id of the path to count
+	 * @param count  how many more times the words were found
+	 * @param budget the budget of the query
+	 */
+	private static void add(Postings.Counter counts, int path, int count, QueryBudget budget) {
+		if (counts.count(path) > 0 || budget.allowDocument()) {
+			counts.add(path, count);
+		}
+	}
+
+	/**
+	 * Returns how many searches were run and how long they took
+	 *
+	 * @return the search latency so far
+	 */
+	public String getLatency() {
+		long count = queries.get();
+		return count + " searches, average " + (count == 0 ? 0 : queryNanos.get() / count / 1000) + " us, max "
+				+ maxQueryNanos.get() / 1000 + " us";
+	}
+
+	@Override
+	public boolean contains(String word) {
+		lock.lockReadOnly();
+		try {
+			if (buffer.getLocations(word) != null) {
+				return true;
+			}
+			for (Segment segment : segments) {
+				if (segment.contains(word)) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public boolean contains(String word, String location) {
+		return contains(word, location, -1);
+	}
+
+	/**
+	 * Checks if the word and location and position is in the index
+	 *
+	 * @param word     the word to see if it is in the index
+	 * @param location the location to see if the location is in the word
+	 * @param position the position to look for, or -1 for any position
+	 * @return true if the word is in the index false if otherwise
+	 */
+	@Override
+	public boolean contains(String word, String location, int position) {
+		int id = documents.getId(location);
+		if (id < 0) {
+			return false;
+		}
+		lock.lockReadOnly();
+		try {
+			TreeMap<Integer, TreeSet<Integer>> locations = buffer.getLocations(word);
+			if (locations != null && locations.containsKey(id)
+					&& (position < 0 || locations.get(id).contains(position))) {
+				return true;
+			}
+			for (Segment segment : segments) {
+				if (segment.contains(word, id, position)) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public boolean hasPositions() {
+		return true;
+	}
+
+	@Override
+	public int getSize() {
+		lock.lockReadOnly();
+		try {
+			ArrayList<Segment> current = segments;
+			int size = buffer.getSize();
+			for (int s = 0; s < current.size(); s++) {
+				size += current.get(s).countNewWords(buffer, current.subList(0, s));
+			}
+			return size;
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public void save(Path path) throws IOException {
+		merged().save(path);
+	}
+
+	@Override
+	public void toJsonAsLocation(Path path) throws IOException {
+		TreeMap<String, Integer> locations = new TreeMap<>();
+		lock.lockReadOnly();
+		try {
+			for (int id = 0; id < totals.length; id++) {
+				if (totals[id] > 0) {
+					locations.put(documents.getPath(id), totals[id]);
+				}
+			}
+		} finally {
+			lock.unlockReadOnly();
+		}
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			TreeJSONWriter.writeLocations(locations, writer, 0);
+		}
+	}
+
+	@Override
+	public void toJSON(Path path) throws IOException {
+		merged().toJSON(path);
+	}
+
+	@Override
+	public String toString() {
+		return merged().toString();
+	}
+
+	/**
+	 * Copies the in memory index and every segment into a single index that
+	 * shares the registry, so the ids stay the same. Only used for output, where
+	 * the whole index is needed anyway.
+	 *
+	 * @return a new index with every live document
+	 */
+	private InvertedIndex merged() {
+		InvertedIndex merged = new InvertedIndex(documents);
+		lock.lockReadOnly();
+		try {
+			merged.addAll(buffer);
+			for (Segment segment : segments) {
+				segment.addTo(merged);
+			}
+		} finally {
+			lock.unlockReadOnly();
+		}
+		return merged;
+	}
+
+	/**
+	 * An immutable part of the index, stored as sorted arrays of words and path
+	 * ids. Only the set of deleted path ids can change.
+	 */
+	private static class Segment {
+
+		private final String[] words;
+		private final int[][] paths;
+		private final int[][][] positions;
+		private final int[][] frequencies;
+		private final BitSet documents;
+		private final Set<Integer> deleted;
+		private final long size;
+
+		/**
+		 * Constructs a segment out of arrays that are already sorted
+		 *
+		 * @param words     the sorted words
+		 * @param paths     the sorted path ids of each word
+		 * @param positions the positions of each word in each path
+		 * @param documents every path id in the segment
+		 * @param size      the number of positions in the segment
+		 */
+		private Segment(String[] words, int[][] paths, int[][][] positions, BitSet documents, long size) {
+			this.words = words;
+			this.paths = paths;
+			this.positions = positions;
+			this.frequencies = new int[paths.length][];
+			for (int i = 0; i < paths.length; i++) {
+				frequencies[i] = new int[paths[i].length];
+				for (int j = 0; j < paths[i].length; j++) {
+					frequencies[i][j] = positions[i][j].length;
+				}
+			}
+			this.documents = documents;
+			this.deleted = ConcurrentHashMap.newKeySet();
+			this.size = size;
+		}
+
+		/**
+		 * Copies an index into a new segment
+		 *
+		 * @param index the index to copy
+		 * @return the segment
+		 */
+		public static Segment of(InvertedIndex index) {
+			TreeMap<String, TreeMap<Integer, TreeSet<Integer>>> words = new TreeMap<>();
+			for (String word : index.getWords()) {
+				words.put(word, index.getLocations(word));
+			}
+			return of(words);
+		}
+
+		/**
+		 * Copies the words, path ids and positions into a new segment
+		 *
+		 * @param index the words mapped to the path ids and positions
+		 * @return the segment
+		 */
+		private static Segment of(TreeMap<String, TreeMap<Integer, TreeSet<Integer>>> index) {
+			String[] words = index.keySet().toArray(new String[0]);
+			int[][] paths = new int[words.length][];
+			int[][][] positions = new int[words.length][][];
+			BitSet documents = new BitSet();
+			long size = 0;
+			for (int i = 0; i < words.length; i++) {
+				TreeMap<Integer, TreeSet<Integer>> locations = index.get(words[i]);
+				paths[i] = new int[locations.size()];
+				positions[i] = new int[locations.size()][];
+				int j = 0;
+				for (Map.Entry<Integer, TreeSet<Integer>> location : locations.entrySet()) {
+					paths[i][j] = location.getKey();
+					documents.set(location.getKey());
+					positions[i][j] = new int[location.getValue().size()];
+					int k = 0;
+					for (int position : location.getValue()) {
+						positions[i][j][k++] = position;
+					}
+					size += k;
+					j++;
+				}
+			}
+			return new Segment(words, paths, positions, documents, size);
+		}
+
+		/**
+		 * Merges segments into a new one, leaving out their deleted paths. The
+		 * sorted words of every segment are walked side by side, and the sorted
+		 * path ids of a word found in more than one segment are merged the same
+		 * way, so nothing is boxed or sorted again. The position arrays of paths
+		 * found in only one segment are shared, since they never change.
+		 *
+		 * @param segments the segments to merge
+		 * @return the merged segment
+		 */
+		public static Segment merge(Collection<Segment> segments) {
+			Segment[] parts = segments.toArray(new Segment[0]);
+			int[] next = new int[parts.length];
+			ArrayList<String> words = new ArrayList<>();
+			ArrayList<int[]> paths = new ArrayList<>();
+			ArrayList<int[][]> positions = new ArrayList<>();
+			BitSet documents = new BitSet();
+			long size = 0;
+			while (true) {
+				String word = null;
+				for (int s = 0; s < parts.length; s++) {
+					if (next[s] < parts[s].words.length
+							&& (word == null || parts[s].words[next[s]].compareTo(word) < 0)) {
+						word = parts[s].words[next[s]];
+					}
+				}
+				if (word == null) {
+					break;
+				}
+
+				int[] mergedPaths = new int[0];
+				int[][] mergedPositions = new int[0][];
+				int length = 0;
+				for (int s = 0; s < parts.length; s++) {
+					if (next[s] < parts[s].words.length && parts[s].words[next[s]].equals(word)) {
+						int[] otherPaths = parts[s].paths[next[s]];
+						int[][] otherPositions = parts[s].positions[next[s]];
+						int[] outPaths = new int[length + otherPaths.length];
+						int[][] outPositions = new int[outPaths.length][];
+						int x = 0;
+						int y = 0;
+						int n = 0;
+						while (x < length || y < otherPaths.length) {
+							if (y < otherPaths.length && parts[s].deleted.contains(otherPaths[y])) {
+								y++;
+							} else if (y == otherPaths.length || (x < length && mergedPaths[x] < otherPaths[y])) {
+								outPaths[n] = mergedPaths[x];
+								outPositions[n++] = mergedPositions[x++];
+							} else if (x == length || otherPaths[y] < mergedPaths[x]) {
+								outPaths[n] = otherPaths[y];
+								outPositions[n++] = otherPositions[y++];
+							} else {
+								int[] union = new int[mergedPositions[x].length + otherPositions[y].length];
+								int count = Postings.union(mergedPositions[x], mergedPositions[x].length, otherPositions[y],
+										otherPositions[y].length, union);
+								outPaths[n] = otherPaths[y];
+								outPositions[n++] = Arrays.copyOf(union, count);
+								x++;
+								y++;
+							}
+						}
+						mergedPaths = outPaths;
+						mergedPositions = outPositions;
+						length = n;
+						next[s]++;
+					}
+				}
+
+				if (length > 0) {
+					words.add(word);
+					paths.add(Arrays.copyOf(mergedPaths, length));
+					positions.add(Arrays.copyOf(mergedPositions, length));
+					for (int j = 0; j < length; j++) {
+						documents.set(mergedPaths[j]);
+						size += mergedPositions[j].length;
+					}
+				}
+			}
+			return new Segment(words.toArray(new String[0]), paths.toArray(new int[0][]),
+					positions.toArray(new int[0][][]), documents, size);
+		}
+
+		/**
+		 * Checks if the path is in the segment and not deleted
+		 *
+		 * @param id the id of the path
+		 * @return true if the segment has the live path
+		 */
+		public boolean has(int id) {
+			return documents.get(id) && !deleted.contains(id);
+		}
+
+		/**
+		 * Checks if the word is in any live path of the segment
+		 *
+		 * @param word the word to look for
+		 * @return true if the word is in the segment
+		 */
+		public boolean contains(String word) {
+			int i = Arrays.binarySearch(words, word);
+			return i >= 0 && isLive(i);
+		}
+
+		/**
+		 * Checks if a word of the segment is in any live path
+		 *
+		 * @param word the index of the word in the segment
+		 * @return true if a path of the word is not deleted
+		 */
+		private boolean isLive(int word) {
+			for (int path : paths[word]) {
+				if (!deleted.contains(path)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Counts the words in a live path of the segment that are not in the index or
+		 * in any of the other segments, without copying any of them
+		 *
+		 * @param index  the in memory index
+		 * @param others the segments whose words are already counted
+		 * @return the number of words only this segment adds
+		 */
+		public int countNewWords(InvertedIndex index, List<Segment> others) {
+			int count = 0;
+			for (int i = 0; i < words.length; i++) {
+				if (!isLive(i) || index.getLocations(words[i]) != null) {
+					continue;
+				}
+				boolean counted = false;
+				for (Segment other : others) {
+					if (other.contains(words[i])) {
+						counted = true;
+						break;
+					}
+				}
+				if (!counted) {
+					count++;
+				}
+			}
+			return count;
+		}
+
+		/**
+		 * Checks if the word is at the position in a live path of the segment
+		 *
+		 * @param word     the word to look for
+		 * @param id       the id of the path
+		 * @param position the position to look for, or -1 for any position
+		 * @return true if the segment has the word at the position in the path
+		 */
+		public boolean contains(String word, int id, int position) {
+			if (!has(id)) {
+				return false;
+			}
+			int i = Arrays.binarySearch(words, word);
+			if (i < 0) {
+				return false;
+			}
+			int j = Arrays.binarySearch(paths[i], id);
+			return j >= 0 && (position < 0 || Arrays.binarySearch(positions[i][j], position) >= 0);
+		}
+
+		/**
+		 * Adds every live path of the segment to an index that shares the registry
+		 *
+		 * @param index the index to add to
+		 */
+		public void addTo(InvertedIndex index) {
+			for (int i = 0; i < words.length; i++) {
+				for (int j = 0; j < paths[i].length; j++) {
+					if (!deleted.contains(paths[i][j])) {
+						index.add(words[i], paths[i][j], positions[i][j]);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Adds the counts of the matching words to the counts for each path
+		 *
+		 * @param queryWords  the words to look for
+		 * @param exactSearch a boolean to see if the exact flag is passed in
+		 * @param counts      the counts for each path
+		 * @param budget      the budget of the query
+		 */
+		public void count(Collection<String> queryWords, boolean exactSearch, Postings.Counter counts,
+				QueryBudget budget) {
+			for (String query : queryWords) {
+				int from = first(query);
+				int end = end(query, exactSearch, from);
+				for (int i = from; i < end; i++) {
+					if (!budget.allowTerm()) {
+						return;
+					}
+					count(i, counts, budget);
+				}
+			}
+		}
+
+		/**
+		 * Adds the counts of the matching words to the counts for each path id,
+		 * with no budget
+		 *
+		 * @param queryWords  the words to look for
+		 * @param exactSearch a boolean to see if the exact flag is passed in
+		 * @param counts      the counts for each path id
+		 */
+		public void accumulate(Collection<String> queryWords, boolean exactSearch, Postings.Counter counts) {
+			for (String query : queryWords) {
+				int from = first(query);
+				int end = end(query, exactSearch, from);
+				for (int i = from; i < end; i++) {
+					if (deleted.isEmpty()) {
+						counts.accumulate(paths[i], frequencies[i], paths[i].length);
+					} else {
+						for (int j = 0; j < paths[i].length; j++) {
+							if (!deleted.contains(paths[i][j])) {
+								counts.add(paths[i][j], frequencies[i][j]);
+							}
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Finds the first word that is not before the query
+		 *
+		 * @param query the query word
+		 * @return the index of the word
+		 */
+		private int first(String query) {
+			int found = Arrays.binarySearch(words, query);
+			return found >= 0 ? found : -found - 1;
+		}
+
+		/**
+		 * Finds the end of the words matching the query
+		 *
+		 * @param query       the query word
+		 * @param exactSearch a boolean to see if the exact flag is passed in
+		 * @param from        the index of the first word that is not before the
+		 *                    query
+		 * @return the index just past the last matching word
+		 */
+		private int end(String query, boolean exactSearch, int from) {
+			if (exactSearch) {
+				return from < words.length && words[from].equals(query) ? from + 1 : from;
+			}
+			int i = from;
+			while (i < words.length && words[i].startsWith(query)) {
+				i++;
+			}
+			return i;
+		}
+
+		/**
+		 * Adds the counts of one word to the counts for each path
+		 *
+		 * @param word   the index of the word
+		 * @param counts the counts for each path
+		 * @param budget the budget of the query
+		 */
+		private void count(int word, Postings.Counter counts, QueryBudget budget) {
+			for (int j = 0; j < paths[word].length; j++) {
+				if (!deleted.contains(paths[word][j])) {
+					add(counts, paths[word][j], frequencies[word][j], budget);
+				}
+			}
+		}
+	}
+}
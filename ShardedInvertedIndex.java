@@ -0,0 +1,352 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * An index that splits the documents between several independent inverted
+ * indexes. Every path always goes to the same shard, so a document is only
+ * ever scored by one shard and the sorted results of every shard can simply be
+ * merged together.
+ *
+ * @author SirIan
+ *
+ */
+public class ShardedInvertedIndex implements InvertedIndexInterface {
+
+	private final InvertedIndex[] shards;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Initializes the index with the given number of shards.
+	 *
+	 * @param count the number of shards to split the documents between
+	 */
+	public ShardedInvertedIndex(int count) {
+		if (count < 1) {
+			throw new IllegalArgumentException("There must be at least one shard: " + count);
+		}
+		this.shards = new InvertedIndex[count];
+		for (int i = 0; i < count; i++) {
+			this.shards[i] = new InvertedIndex();
+		}
+		this.pool = ForkJoinPool.commonPool();
+	}
+
+	/**
+	 * Finds the shard that holds the path
+	 *
+	 * @param path the file to find the shard for
+	 * @return the shard the path belongs to
+	 */
+	private InvertedIndex shardFor(String path) {
+		return shards[Math.floorMod(path.hashCode(), shards.length)];
+	}
+
+	/**
+	 * Gets the number of shards
+	 *
+	 * @return the number of shards
+	 */
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	@Override
+	public boolean add(String word, int position, String path) {
+		InvertedIndex shard = shardFor(path);
+		synchronized (shard) {
+			return shard.add(word, position, path);
+		}
+	}
+
+	@Override
+	public boolean addAll(String[] text, String path, int start) {
+		InvertedIndex shard = shardFor(path);
+		synchronized (shard) {
+			return shard.addAll(text, path, start);
+		}
+	}
+
+	@Override
+	public boolean addDocument(String path, Map<String, ? extends Collection<Integer>> document) {
+		InvertedIndex shard = shardFor(path);
+		synchronized (shard) {
+			return shard.addDocument(path, document);
+		}
+	}
+
+	@Override
+	public boolean removeDocument(String path) {
+		InvertedIndex shard = shardFor(path);
+		synchronized (shard) {
+			return shard.removeDocument(path);
+		}
+	}
+
+	@Override
+	public boolean replaceDocument(String path, Map<String, ? extends Collection<Integer>> document) {
+		InvertedIndex shard = shardFor(path);
+		synchronized (shard) {
+			return shard.replaceDocument(path, document);
+		}
+	}
+
+	@Override
+	public boolean contains(String word) {
+		for (InvertedIndex shard : shards) {
+			synchronized (shard) {
+				if (shard.contains(word)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean contains(String word, String location) throws NullPointerException {
+		InvertedIndex shard = shardFor(location);
+		synchronized (shard) {
+			return shard.contains(word, location);
+		}
+	}
+
+	@Override
+	public boolean contains(String word, String location, int position) throws NullPointerException {
+		InvertedIndex shard = shardFor(location);
+		synchronized (shard) {
+			return shard.contains(word, location, position);
+		}
+	}
+
+	@Override
+	public boolean hasPositions() {
+		return true;
+	}
+
+	@Override
+	public int getSize() {
+		int size = 0;
+		for (int i = 0; i < shards.length; i++) {
+			synchronized (shards[i]) {
+				for (String word : shards[i].getWords()) {
+					if (!inEarlierShard(word, i)) {
+						size++;
+					}
+				}
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Checks if a word is in any shard before the given one, so a word that is in
+	 * many shards is only counted once. The lock of an earlier shard is only ever
+	 * taken while holding the lock of a later one, so two threads can not wait on
+	 * each other.
+	 *
+	 * @param word  the word to look for
+	 * @param shard the shard the word was found in
+	 * @return true if an earlier shard has the word
+	 */
+	private boolean inEarlierShard(String word, int shard) {
+		for (int j = 0; j < shard; j++) {
+			synchronized (shards[j]) {
+				if (shards[j].getLocations(word) != null) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void save(Path path) throws IOException {
+		merged().save(path);
+	}
+
+	@Override
+	public void toJsonAsLocation(Path path) throws IOException {
+		merged().toJsonAsLocation(path);
+	}
+
+	@Override
+	public void toJSON(Path path) throws IOException {
+		merged().toJSON(path);
+	}
+
+	@Override
+	public String toString() {
+		return merged().toString();
+	}
+
+	@Override
+	public ArrayList<Results> exactSearch(Collection<String> queryWords) {
+		return searchIndex(queryWords, true);
+	}
+
+	@Override
+	public ArrayList<Results> partialSearch(Collection<String> queryWords) {
+		return searchIndex(queryWords, false);
+	}
+
+	/**
+	 * Searches every shard at the same time and merges the sorted results of the
+	 * shards together.
+	 *
+	 * @param queryWords  the words to look for
+	 * @param exactSearch a boolean to see if the exact flag is passed in
+	 * @return an ArrayList of all the results for the words
+	 */
+	@Override
+	public ArrayList<Results> searchIndex(Collection<String> queryWords, boolean exactSearch) {
+		return searchIndex(queryWords, exactSearch, 0);
+	}
+
+	/**
+	 * Searches every shard at the same time for its best results and merges them
+	 * together. A path is only ever in one shard, so the best results overall are
+	 * always among the best results of their own shard.
+	 *
+	 * @param queryWords  the words to look for
+	 * @param exactSearch a boolean to see if the exact flag is passed in
+	 * @param limit       how many results to keep, or 0 to keep all of them
+	 * @return an ArrayList of the best results for the words
+	 */
+	@Override
+	public ArrayList<Results> searchIndex(Collection<String> queryWords, boolean exactSearch, int limit) {
+		return searchIndex(queryWords, exactSearch, limit, QueryBudget.UNLIMITED);
+	}
+
+	/**
+	 * Searches every shard at the same time, all of them taking from the same
+	 * budget, so the limits hold for the whole query and not for each shard.
+	 *
+	 * @param queryWords  the words to look for
+	 * @param exactSearch a boolean to see if the exact flag is passed in
+	 * @param limit       how many results to keep, or 0 to keep all of them
+	 * @param budget      the started budget of the query
+	 * @return an ArrayList of the best results found within the budget
+	 */
+	@Override
+	public ArrayList<Results> searchIndex(Collection<String> queryWords, boolean exactSearch, int limit,
+			QueryBudget budget) {
+		ArrayList<Future<ArrayList<Results>>> futures = new ArrayList<>(shards.length);
+		for (InvertedIndex shard : shards) {
+			futures.add(pool.submit(() -> {
+				synchronized (shard) {
+					return shard.searchIndex(queryWords, exactSearch, limit, budget);
+				}
+			}));
+		}
+
+		ArrayList<ArrayList<Results>> found = new ArrayList<>(shards.length);
+		try {
+			for (Future<ArrayList<Results>> future : futures) {
+				found.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while searching the shards.", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Unable to search the shards.", e.getCause());
+		}
+
+		ArrayList<Results> merged = merge(found);
+		if (limit > 0 && merged.size() > limit) {
+			return new ArrayList<>(merged.subList(0, limit));
+		}
+		return merged;
+	}
+
+	/**
+	 * Merges lists that are already sorted into one sorted list.
+	 *
+	 * @param lists the sorted lists to merge
+	 * @return the merged list
+	 */
+	private static ArrayList<Results> merge(ArrayList<ArrayList<Results>> lists) {
+		int total = 0;
+		PriorityQueue<Cursor> heads = new PriorityQueue<>();
+		for (ArrayList<Results> list : lists) {
+			total += list.size();
+			if (!list.isEmpty()) {
+				heads.add(new Cursor(list));
+			}
+		}
+
+		ArrayList<Results> merged = new ArrayList<>(total);
+		while (!heads.isEmpty()) {
+			Cursor cursor = heads.poll();
+			merged.add(cursor.current());
+			if (cursor.next()) {
+				heads.add(cursor);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Copies every shard into a single index. Only used for output, where the
+	 * whole index is needed anyway.
+	 *
+	 * @return a new index with the documents of every shard
+	 */
+	private InvertedIndex merged() {
+		InvertedIndex merged = new InvertedIndex();
+		for (InvertedIndex shard : shards) {
+			synchronized (shard) {
+				merged.addAll(shard);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * The position inside one of the sorted lists being merged.
+	 */
+	private static class Cursor implements Comparable<Cursor> {
+
+		private final ArrayList<Results> list;
+		private int index;
+
+		/**
+		 * Starts at the front of the list
+		 *
+		 * @param list the sorted list to walk through
+		 */
+		public Cursor(ArrayList<Results> list) {
+			this.list = list;
+			this.index = 0;
+		}
+
+		/**
+		 * Gets the result the cursor is on
+		 *
+		 * @return the current result
+		 */
+		public Results current() {
+			return list.get(index);
+		}
+
+		/**
+		 * Moves to the next result
+		 *
+		 * @return true if there is another result in the list
+		 */
+		public boolean next() {
+			return ++index < list.size();
+		}
+
+		@Override
+		public int compareTo(Cursor other) {
+			return this.current().compareTo(other.current());
+		}
+	}
+}
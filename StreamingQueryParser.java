@@ -0,0 +1,256 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeSet;
+
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+
+/**
+ * Searches the queries as they are read, for query files too big to keep every
+ * result in memory. The results of each query are handed on in the order the
+ * queries were read, through a {@link ReorderBuffer} when they are searched on
+ * a work queue, to a {@link ResultsSorter} that keeps only so many of them in
+ * memory. Only so many queries are searched ahead of the oldest one that is not
+ * finished, and only so many results can wait on it, so the reader waits for
+ * the searches instead of running ahead of them. A query that is being searched
+ * or whose results are still in memory is not searched again, and one whose
+ * results were already written to a run is searched but dropped when the runs
+ * are merged, so the results written are the same as the other query parsers
+ * write.
+ *
+ * @author SirIan
+ *
+ */
+public class StreamingQueryParser implements QueryParserInterface, Closeable {
+
+	/**
+	 * How many queries can be searched ahead of the oldest one that is not
+	 * finished.
+	 */
+	public static final int DEFAULT_WINDOW = 1024;
+
+	private final InvertedIndexInterface invertedIndex;
+	private final WorkQueue queue;
+	private final int limit;
+	private final QueryLimiter limiter;
+	private final ResultsSorter sorter;
+	private final ReorderBuffer<Map.Entry<String, ArrayList<Results>>> reorder;
+	private final HashSet<String> searching;
+
+	private volatile IOException failure;
+
+	/**
+	 * Constructor for a StreamingQueryParser that searches on the thread that
+	 * reads the queries
+	 *
+	 * @param index   InvertedIndex that holds the index of words.
+	 * @param limit   how many results to keep for every query, or 0 to keep all
+	 * @param limiter the limiter every search goes through
+	 * @param memory  how many results to hold in memory before writing them to a
+	 *                run
+	 */
+	public StreamingQueryParser(InvertedIndexInterface index, int limit, QueryLimiter limiter, int memory) {
+		this(index, null, limit, limiter, memory);
+	}
+
+	/**
+	 * Constructor for a StreamingQueryParser that searches on a work queue
+	 *
+	 * @param index   InvertedIndex that holds the index of words.
+	 * @param queue   the work queue to search on, or null to search on the thread
+	 *                that reads the queries
+	 * @param limit   how many results to keep for every query, or 0 to keep all
+	 * @param limiter the limiter every search goes through
+	 * @param memory  how many results to hold in memory before writing them to a
+	 *                run, which is also how many finished results can wait on a
+	 *                slow search
+	 */
+	public StreamingQueryParser(InvertedIndexInterface index, WorkQueue queue, int limit, QueryLimiter limiter,
+			int memory) {
+		this.invertedIndex = index;
+		this.queue = queue;
+		this.limit = limit;
+		this.limiter = limiter;
+		this.sorter = new ResultsSorter(memory);
+		this.reorder = new ReorderBuffer<>(DEFAULT_WINDOW, Math.max(1, memory),
+				entry -> entry.getValue().size() + 1, this::emit);
+		this.searching = new HashSet<>();
+		this.failure = null;
+	}
+
+	/**
+	 * This will read the queries and search each of them as soon as it is read
+	 *
+	 * @param path      The path of the queries
+	 * @param exactFlag to see if exact flag was passed too
+	 * @throws IOException
+	 */
+	@Override
+	public void readQueries(Path path, boolean exactFlag) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			String line = "";
+			while ((line = reader.readLine()) != null) {
+				parseLine(line, exactFlag);
+			}
+		} finally {
+			if (queue != null) {
+				queue.finish();
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * This will start the search of a single line, waiting first if too many
+	 * searches are ahead of the oldest one that is not finished
+	 *
+	 * @param line  The single line in the file
+	 * @param exact The flag to see if must search exact word or not
+	 * @throws IOException if interrupted while waiting
+	 */
+	@Override
+	public void parseLine(String line, boolean exact) throws IOException {
+		long sequence;
+		try {
+			sequence = reorder.start();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to search: " + line);
+		}
+		Task task = new Task(sequence, line, exact);
+		if (queue == null) {
+			task.run();
+		} else {
+			queue.execute(task);
+		}
+	}
+
+	/**
+	 * Claims a query to search, unless it is already being searched or its
+	 * results are still in memory
+	 *
+	 * @param query the stemmed query
+	 * @return true if the query should be searched
+	 */
+	private synchronized boolean claim(String query) {
+		return !sorter.isBuffered(query) && searching.add(query);
+	}
+
+	/**
+	 * Lets go of a query whose search failed, so it can be searched again
+	 *
+	 * @param query the stemmed query
+	 */
+	private synchronized void release(String query) {
+		searching.remove(query);
+	}
+
+	/**
+	 * Hands the results of a query to the sorter, in the order the queries were
+	 * read
+	 *
+	 * @param entry the query and its results
+	 */
+	private synchronized void emit(Map.Entry<String, ArrayList<Results>> entry) {
+		try {
+			sorter.add(entry.getKey(), entry.getValue());
+		} catch (IOException e) {
+			if (failure == null) {
+				failure = e;
+			}
+		} finally {
+			searching.remove(entry.getKey());
+		}
+	}
+
+	/**
+	 * Gets how many runs the results were written to because they did not fit in
+	 * memory
+	 *
+	 * @return the number of runs
+	 */
+	public int getRuns() {
+		return sorter.getRuns();
+	}
+
+	/**
+	 * This will write a json at the path it was given, merging the runs with the
+	 * results still in memory.
+	 *
+	 * @param path the path it writes to
+	 * @throws IOException
+	 */
+	@Override
+	public void toJSON(Path path) throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+		sorter.toJSON(path);
+	}
+
+	/**
+	 * Deletes the runs the results were written to
+	 */
+	@Override
+	public void close() throws IOException {
+		sorter.close();
+	}
+
+	/**
+	 * An inner class for a runnable method to search one query and hand on its
+	 * results
+	 *
+	 * @author SirIan
+	 *
+	 */
+	private class Task implements Runnable {
+		private final long sequence;
+		private final String line;
+		private final boolean exactFlag;
+
+		/**
+		 * This is the constructor for the runnable class
+		 *
+		 * @param sequence where the query is in the file
+		 * @param line     The line of the query file to search for
+		 * @param exact    Boolean to do either exact or partial
+		 */
+		public Task(long sequence, String line, boolean exact) {
+			this.sequence = sequence;
+			this.line = line;
+			this.exactFlag = exact;
+		}
+
+		@Override
+		public void run() {
+			Map.Entry<String, ArrayList<Results>> entry = null;
+			String claimed = null;
+			try {
+				TreeSet<String> queryWords = new TreeSet<>();
+				SnowballStemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+				TextFileStemmer.stemLine(line, stemmer, queryWords);
+				String queryLine = String.join(" ", queryWords);
+				if (!queryLine.equals("") && claim(queryLine)) {
+					claimed = queryLine;
+					entry = new AbstractMap.SimpleImmutableEntry<>(queryLine,
+							limiter.search(invertedIndex, queryWords, exactFlag, limit));
+				}
+			} finally {
+				if (entry == null && claimed != null) {
+					release(claimed);
+				}
+				reorder.finish(sequence, entry);
+			}
+		}
+	}
+}
@@ -0,0 +1,225 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * An inverted index that can be changed and searched from many threads at the
+ * same time. Searches take a read lock and changes take a write lock, so
+ * searches run side by side but never see a change half made.
+ *
+ * Adding an array of words goes through {@link #add(String, int, String)} one
+ * word at a time, so other threads can see the array partly added. Use
+ * {@link #addDocument(String, Map)} to add a whole document in one step.
+ * Loading a saved index reads the whole file before it takes the write lock.
+ *
+ * @author SirIan
+ *
+ */
+public class ThreadSafeInvertedIndex extends InvertedIndex {
+
+	private final ReadWriteLock lock;
+
+	/**
+	 * Initializes the index.
+	 */
+	public ThreadSafeInvertedIndex() {
+		super();
+		this.lock = new ReadWriteLock();
+	}
+
+	/**
+	 * Initializes the index with a word filter of at least the given size.
+	 * Searches build the filter under the read lock, which is safe since the
+	 * words do not change until the write lock is taken.
+	 *
+	 * @param expectedWords     the fewest words the filter is sized for
+	 * @param falsePositiveRate the chance a missing word gets past the filter
+	 */
+	public ThreadSafeInvertedIndex(int expectedWords, double falsePositiveRate) {
+		super(expectedWords, falsePositiveRate);
+		this.lock = new ReadWriteLock();
+	}
+
+	@Override
+	public boolean add(String word, int position, String path) {
+		lock.lockReadWrite();
+		try {
+			return super.add(word, position, path);
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	@Override
+	public boolean addDocument(String path, Map<String, ? extends Collection<Integer>> document) {
+		lock.lockReadWrite();
+		try {
+			return super.addDocument(path, document);
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	@Override
+	public boolean removeDocument(String path) {
+		lock.lockReadWrite();
+		try {
+			return super.removeDocument(path);
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	@Override
+	public boolean replaceDocument(String path, Map<String, ? extends Collection<Integer>> document) {
+		lock.lockReadWrite();
+		try {
+			return super.replaceDocument(path, document);
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	@Override
+	public void addAll(InvertedIndex other) {
+		lock.lockReadWrite();
+		try {
+			super.addAll(other);
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	@Override
+	public void replaceAll(InvertedIndex other) {
+		lock.lockReadWrite();
+		try {
+			super.replaceAll(other);
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	@Override
+	public void save(Path path) throws IOException {
+		lock.lockReadOnly();
+		try {
+			super.save(path);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public void toJsonAsLocation(Path path) throws IOException {
+		lock.lockReadOnly();
+		try {
+			super.toJsonAsLocation(path);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public void toJSON(Path path) throws IOException {
+		lock.lockReadOnly();
+		try {
+			super.toJSON(path);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public String toString() {
+		lock.lockReadOnly();
+		try {
+			return super.toString();
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public boolean contains(String word) {
+		lock.lockReadOnly();
+		try {
+			return super.contains(word);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public boolean contains(String word, String location) throws NullPointerException {
+		lock.lockReadOnly();
+		try {
+			return super.contains(word, location);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public boolean contains(String word, String location, int position) throws NullPointerException {
+		lock.lockReadOnly();
+		try {
+			return super.contains(word, location, position);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public int getSize() {
+		lock.lockReadOnly();
+		try {
+			return super.getSize();
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public ArrayList<Results> exactSearch(Collection<String> queryWords) {
+		lock.lockReadOnly();
+		try {
+			return super.exactSearch(queryWords);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public ArrayList<Results> partialSearch(Collection<String> queryWords) {
+		lock.lockReadOnly();
+		try {
+			return super.partialSearch(queryWords);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public ArrayList<Results> searchIndex(Collection<String> queryWords, boolean exactSearch, int limit) {
+		lock.lockReadOnly();
+		try {
+			return super.searchIndex(queryWords, exactSearch, limit);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public ArrayList<Results> searchIndex(Collection<String> queryWords, boolean exactSearch, int limit,
+			QueryBudget budget) {
+		lock.lockReadOnly();
+		try {
+			return super.searchIndex(queryWords, exactSearch, limit, budget);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+}
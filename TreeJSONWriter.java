@@ -0,0 +1,264 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the index, the locations and the search results as pretty JSON, with
+ * one tab for every level of nesting. Every writer takes the level of the line
+ * the value starts on, so the closing bracket lines up with it.
+ *
+ * @author SirIan
+ *
+ */
+public class TreeJSONWriter {
+
+	/**
+	 * Writes the locations and how many words are in each of them as a JSON
+	 * object
+	 *
+	 * @param elements the paths mapped to their number of words
+	 * @param writer   the writer to use
+	 * @param level    the initial indent level
+	 * @throws IOException
+	 */
+	public static void writeLocations(Map<String, Integer> elements, Writer writer, int level) throws IOException {
+		writer.write("{");
+		Iterator<Map.Entry<String, Integer>> iterator = elements.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String, Integer> entry = iterator.next();
+			writer.write(System.lineSeparator());
+			indent(writer, level + 1);
+			quote(entry.getKey(), writer);
+			writer.write(": " + entry.getValue());
+			if (iterator.hasNext()) {
+				writer.write(",");
+			}
+		}
+		writer.write(System.lineSeparator());
+		indent(writer, level);
+		writer.write("}");
+	}
+
+	/**
+	 * Writes the positions as a JSON array
+	 *
+	 * @param elements the positions to write
+	 * @param writer   the writer to use
+	 * @param level    the initial indent level
+	 * @throws IOException
+	 */
+	public static void asArray(Collection<Integer> elements, Writer writer, int level) throws IOException {
+		writer.write("[");
+		Iterator<Integer> iterator = elements.iterator();
+		while (iterator.hasNext()) {
+			writer.write(System.lineSeparator());
+			indent(writer, level + 1);
+			writer.write(iterator.next().toString());
+			if (iterator.hasNext()) {
+				writer.write(",");
+			}
+		}
+		writer.write(System.lineSeparator());
+		indent(writer, level);
+		writer.write("]");
+	}
+
+	/**
+	 * Writes the words, the paths they are in and their positions in each path as
+	 * nested JSON objects
+	 *
+	 * @param elements the words mapped to the paths and positions
+	 * @param writer   the writer to use
+	 * @param level    the initial indent level
+	 * @throws IOException
+	 */
+	public static void asDoubleNestedObject(Map<String, ? extends Map<String, ? extends Collection<Integer>>> elements,
+			Writer writer, int level) throws IOException {
+		writer.write("{");
+		Iterator<? extends Map.Entry<String, ? extends Map<String, ? extends Collection<Integer>>>> words = elements
+				.entrySet().iterator();
+		while (words.hasNext()) {
+			Map.Entry<String, ? extends Map<String, ? extends Collection<Integer>>> word = words.next();
+			writer.write(System.lineSeparator());
+			indent(writer, level + 1);
+			quote(word.getKey(), writer);
+			writer.write(": {");
+			Iterator<? extends Map.Entry<String, ? extends Collection<Integer>>> paths = word.getValue().entrySet()
+					.iterator();
+			while (paths.hasNext()) {
+				Map.Entry<String, ? extends Collection<Integer>> path = paths.next();
+				writer.write(System.lineSeparator());
+				indent(writer, level + 2);
+				quote(path.getKey(), writer);
+				writer.write(": ");
+				asArray(path.getValue(), writer, level + 2);
+				if (paths.hasNext()) {
+					writer.write(",");
+				}
+			}
+			writer.write(System.lineSeparator());
+			indent(writer, level + 1);
+			writer.write("}");
+			if (words.hasNext()) {
+				writer.write(",");
+			}
+		}
+		writer.write(System.lineSeparator());
+		indent(writer, level);
+		writer.write("}");
+	}
+
+	/**
+	 * Writes every query and its results as a JSON object, in the order of the map
+	 *
+	 * @param elements the queries mapped to their sorted results
+	 * @param writer   the writer to use
+	 * @param level    the initial indent level
+	 * @throws IOException
+	 */
+	public static void asResults(Map<String, ? extends List<Results>> elements, Writer writer, int level)
+			throws IOException {
+		writer.write("{");
+		Iterator<? extends Map.Entry<String, ? extends List<Results>>> iterator = elements.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String, ? extends List<Results>> entry = iterator.next();
+			writer.write(System.lineSeparator());
+			indent(writer, level + 1);
+			quote(entry.getKey(), writer);
+			writer.write(": ");
+			asQueryResults(entry.getValue(), writer, level + 1);
+			if (iterator.hasNext()) {
+				writer.write(",");
+			}
+		}
+		writer.write(System.lineSeparator());
+		indent(writer, level);
+		writer.write("}");
+	}
+
+	/**
+	 * Writes the results of one query. The results are a JSON array, unless the
+	 * query did not run to the end, in which case they are an object with the
+	 * status of the query and the array.
+	 *
+	 * @param results the sorted results of the query
+	 * @param writer  the writer to use
+	 * @param level   the initial indent level
+	 * @throws IOException
+	 */
+	public static void asQueryResults(List<Results> results, Writer writer, int level) throws IOException {
+		if (results instanceof QueryResults && !((QueryResults) results).isComplete()) {
+			writer.write("{");
+			writer.write(System.lineSeparator());
+			indent(writer, level + 1);
+			writer.write("\"status\": ");
+			quote(((QueryResults) results).getStatus().toString(), writer);
+			writer.write(",");
+			writer.write(System.lineSeparator());
+			indent(writer, level + 1);
+			writer.write("\"results\": ");
+			asResultsArray(results, writer, level + 1);
+			writer.write(System.lineSeparator());
+			indent(writer, level);
+			writer.write("}");
+		} else {
+			asResultsArray(results, writer, level);
+		}
+	}
+
+	/**
+	 * Writes the results of one query as a JSON array of objects with the path,
+	 * the count and the score of each result
+	 *
+	 * @param results the sorted results of the query
+	 * @param writer  the writer to use
+	 * @param level   the initial indent level
+	 * @throws IOException
+	 */
+	private static void asResultsArray(List<Results> results, Writer writer, int level) throws IOException {
+		writer.write("[");
+		Iterator<Results> iterator = results.iterator();
+		while (iterator.hasNext()) {
+			Results result = iterator.next();
+			writer.write(System.lineSeparator());
+			indent(writer, level + 1);
+			writer.write("{");
+			writer.write(System.lineSeparator());
+			indent(writer, level + 2);
+			writer.write("\"where\": ");
+			quote(result.getPath(), writer);
+			writer.write(",");
+			writer.write(System.lineSeparator());
+			indent(writer, level + 2);
+			writer.write("\"count\": " + result.getCount() + ",");
+			writer.write(System.lineSeparator());
+			indent(writer, level + 2);
+			writer.write("\"score\": " + String.format(Locale.ROOT, "%.8f", result.getScore()));
+			writer.write(System.lineSeparator());
+			indent(writer, level + 1);
+			writer.write("}");
+			if (iterator.hasNext()) {
+				writer.write(",");
+			}
+		}
+		writer.write(System.lineSeparator());
+		indent(writer, level);
+		writer.write("]");
+	}
+
+	/**
+	 * Writes a string in quotes, escaping the quotes, backslashes and control
+	 * characters in it so the JSON stays valid
+	 *
+	 * @param element the string to write
+	 * @param writer  the writer to use
+	 * @throws IOException
+	 */
+	public static void quote(String element, Writer writer) throws IOException {
+		writer.write('"');
+		for (int i = 0; i < element.length(); i++) {
+			char c = element.charAt(i);
+			switch (c) {
+			case '"':
+				writer.write("\\\"");
+				break;
+			case '\\':
+				writer.write("\\\\");
+				break;
+			case '\n':
+				writer.write("\\n");
+				break;
+			case '\r':
+				writer.write("\\r");
+				break;
+			case '\t':
+				writer.write("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					writer.write(String.format("\\u%04x", (int) c));
+				} else {
+					writer.write(c);
+				}
+			}
+		}
+		writer.write('"');
+	}
+
+	/**
+	 * Writes the tabs for an indent level
+	 *
+	 * @param writer the writer to use
+	 * @param times  the number of tabs to write
+	 * @throws IOException
+	 */
+	public static void indent(Writer writer, int times) throws IOException {
+		for (int i = 0; i < times; i++) {
+			writer.write('\t');
+		}
+	}
+}
@@ -0,0 +1,64 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Runs a few tiny documents and queries through the same code a real run uses,
+ * so the stemmer and index classes are loaded and the hot methods are compiled
+ * before the real files are read. This only helps when the rest of the run is
+ * short, such as a few queries against a saved index.
+ *
+ * @author SirIan
+ *
+ */
+public class Warmup {
+
+	/**
+	 * How many times the corpus is run through by default.
+	 */
+	public static final int DEFAULT_ROUNDS = 20;
+
+	/**
+	 * The built in documents.
+	 */
+	private static final String[] CORPUS = {
+			"The quick brown fox jumps over the lazy dog while the dogs are sleeping.",
+			"Searching an inverted index means looking up every stemmed word of the query.",
+			"Running runners ran quickly past the lazy foxes and the sleeping dog.",
+			"Each document is read line by line, stemmed, and added with its positions.",
+			"Partial searches match every word in the index that starts with a query word." };
+
+	/**
+	 * The built in queries, searched both exactly and partially.
+	 */
+	private static final String[] QUERIES = { "lazy dog", "quick fox", "search index", "run", "stem word position",
+			"missing" };
+
+	/**
+	 * Indexes and searches the built in corpus, throwing the results away
+	 *
+	 * @param rounds how many times to run through the corpus
+	 * @return how many milliseconds it took
+	 * @throws IOException
+	 */
+	public static long run(int rounds) throws IOException {
+		long start = System.nanoTime();
+		for (int round = 0; round < rounds; round++) {
+			InvertedIndex index = new InvertedIndex();
+			for (int i = 0; i < CORPUS.length; i++) {
+				try (BufferedReader reader = new BufferedReader(new StringReader(CORPUS[i]))) {
+					index.addDocument("warmup/" + i + ".txt", FileReader.readDocument(reader));
+				}
+			}
+			QueryFileParser exact = new QueryFileParser(index);
+			QueryFileParser partial = new QueryFileParser(index);
+			QueryFileParser top = new QueryFileParser(index, 2);
+			for (String query : QUERIES) {
+				exact.parseLine(query, true);
+				partial.parseLine(query, false);
+				top.parseLine(query, false);
+			}
+		}
+		return (System.nanoTime() - start) / 1000000;
+	}
+}
@@ -0,0 +1,442 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * An append only log of the documents added to and removed from an index.
+ * Changes are given a sequence number and queued, and a single writer thread
+ * writes everything queued so far and forces it to disk once, so many changes
+ * made at the same time share one fsync.
+ *
+ * The log is split into files named after the first sequence number in them.
+ * Every record is written with its length and a checksum, so a record that was
+ * only partly written before a crash is noticed on replay. Replay cuts the file
+ * off before that record, so the changes logged after recovery are never
+ * written behind it.
+ *
+ * @author SirIan
+ *
+ */
+public class WriteAheadLog implements Closeable {
+
+	/**
+	 * A document was added.
+	 */
+	public static final byte ADD = 1;
+
+	/**
+	 * A document was removed.
+	 */
+	public static final byte REMOVE = 2;
+
+	/**
+	 * A document was replaced with a new version.
+	 */
+	public static final byte REPLACE = 3;
+
+	private static final String PREFIX = "log-";
+	private static final String SUFFIX = ".wal";
+
+	private final Path directory;
+	private final ArrayList<Entry> pending;
+	private final Thread writer;
+
+	private FileChannel channel;
+	private Path current;
+	private long nextSequence;
+	private long durableSequence;
+	private long rolledSequence;
+	private IOException failure;
+	private boolean closed;
+
+	/**
+	 * Opens a new log file in the directory and starts the writer thread.
+	 *
+	 * @param directory    where to keep the log files
+	 * @param nextSequence the sequence number to give the next change
+	 * @throws IOException
+	 */
+	public WriteAheadLog(Path directory, long nextSequence) throws IOException {
+		this.directory = directory;
+		this.pending = new ArrayList<>();
+		this.nextSequence = nextSequence;
+		this.durableSequence = nextSequence - 1;
+		this.rolledSequence = nextSequence;
+		this.failure = null;
+		this.closed = false;
+		open(nextSequence);
+
+		this.writer = new Thread(this::write, "write-ahead-log");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Creates the log file that starts at the sequence number. The file must not
+	 * exist yet, since anything already in it would come before the new records.
+	 *
+	 * @param sequence the first sequence number in the file
+	 * @throws IOException
+	 */
+	private void open(long sequence) throws IOException {
+		current = directory.resolve(String.format("%s%020d%s", PREFIX, sequence, SUFFIX));
+		channel = FileChannel.open(current, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Queues a change to be written. This does not wait for the change to reach
+	 * the disk, see {@link #await(long)}.
+	 *
+	 * @param type     {@link #ADD}, {@link #REMOVE} or {@link #REPLACE}
+	 * @param path     the document that changed
+	 * @param document the words and positions of the document, or null for a
+	 *                 removal
+	 * @return the sequence number of the change
+	 * @throws IOException if the log can not be written to anymore
+	 */
+	public synchronized long append(byte type, String path, Map<String, ? extends Collection<Integer>> document)
+			throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+		if (closed) {
+			throw new IOException("The log is closed.");
+		}
+		long sequence = nextSequence++;
+		pending.add(new Entry(sequence, encode(sequence, type, path, document)));
+		notifyAll();
+		return sequence;
+	}
+
+	/**
+	 * Waits until the change and every change before it are on disk.
+	 *
+	 * @param sequence the sequence number to wait for
+	 * @throws IOException if the log could not be written
+	 */
+	public synchronized void await(long sequence) throws IOException {
+		while (durableSequence < sequence && failure == null) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for the log.", e);
+			}
+		}
+		if (durableSequence < sequence) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Starts a new log file for every change after the ones queued so far, and
+	 * waits until the writer has switched to it. Every older file then only holds
+	 * changes up to the last sequence number handed out before this call.
+	 *
+	 * @throws IOException if the log could not be written
+	 */
+	public synchronized void roll() throws IOException {
+		long sequence = nextSequence;
+		pending.add(new Entry(sequence, null));
+		notifyAll();
+		while (rolledSequence < sequence && failure == null) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while rolling the log.", e);
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Deletes every log file before the one being written to now.
+	 *
+	 * @throws IOException
+	 */
+	public void deleteOlderFiles() throws IOException {
+		Path active;
+		synchronized (this) {
+			active = current;
+		}
+		for (Path file : files(directory)) {
+			if (file.getFileName().toString().compareTo(active.getFileName().toString()) < 0) {
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+
+	/**
+	 * Writes the queued changes until the log is closed.
+	 */
+	private void write() {
+		ArrayList<Entry> batch = new ArrayList<>();
+		while (true) {
+			synchronized (this) {
+				while (pending.isEmpty() && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (pending.isEmpty()) {
+					return;
+				}
+				batch.addAll(pending);
+				pending.clear();
+			}
+
+			try {
+				for (Entry entry : batch) {
+					if (entry.data == null) {
+						if (entry.sequence != rolledSequence) {
+							channel.force(false);
+							channel.close();
+							open(entry.sequence);
+						}
+						synchronized (this) {
+							durableSequence = entry.sequence - 1;
+							rolledSequence = entry.sequence;
+							notifyAll();
+						}
+					} else {
+						ByteBuffer buffer = ByteBuffer.wrap(entry.data);
+						while (buffer.hasRemaining()) {
+							channel.write(buffer);
+						}
+					}
+				}
+				channel.force(false);
+			} catch (IOException e) {
+				synchronized (this) {
+					failure = e;
+					notifyAll();
+				}
+				return;
+			}
+
+			synchronized (this) {
+				durableSequence = batch.get(batch.size() - 1).sequence;
+				if (batch.get(batch.size() - 1).data == null) {
+					durableSequence--;
+				}
+				notifyAll();
+			}
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Writes everything still queued and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Turns a change into the bytes of a record: the length of the rest of the
+	 * record, a checksum of the rest, and the change itself.
+	 *
+	 * @param sequence the sequence number of the change
+	 * @param type     the kind of change
+	 * @param path     the document that changed
+	 * @param document the words and positions of the document, or null
+	 * @return the bytes of the record
+	 * @throws IOException
+	 */
+	private static byte[] encode(long sequence, byte type, String path,
+			Map<String, ? extends Collection<Integer>> document) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeLong(sequence);
+			out.writeByte(type);
+			out.writeUTF(path);
+			if (document == null) {
+				out.writeInt(0);
+			} else {
+				out.writeInt(document.size());
+				for (Map.Entry<String, ? extends Collection<Integer>> entry : document.entrySet()) {
+					out.writeUTF(entry.getKey());
+					out.writeInt(entry.getValue().size());
+					for (int position : entry.getValue()) {
+						out.writeInt(position);
+					}
+				}
+			}
+		}
+
+		byte[] body = bytes.toByteArray();
+		CRC32 checksum = new CRC32();
+		checksum.update(body, 0, body.length);
+		ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + Long.BYTES + body.length);
+		record.putInt(body.length);
+		record.putLong(checksum.getValue());
+		record.put(body);
+		return record.array();
+	}
+
+	/**
+	 * Reads every log file in the directory in order and hands every complete
+	 * change after the given sequence number to the replayer. A file stops being
+	 * read at the first record that is cut off or does not match its checksum,
+	 * and is truncated to the records before it, or deleted if there are none.
+	 *
+	 * @param directory where the log files are
+	 * @param after     the last sequence number that is already in the index
+	 * @param replayer  what to do with every change
+	 * @return the highest sequence number found, or {@code after} if there were
+	 *         none
+	 * @throws IOException
+	 */
+	public static long replay(Path directory, long after, Replayer replayer) throws IOException {
+		long last = after;
+		for (Path file : files(directory)) {
+			long size = Files.size(file);
+			long remaining = size;
+			long valid = 0;
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+				while (true) {
+					byte[] body;
+					try {
+						int length = in.readInt();
+						long expected = in.readLong();
+						remaining -= Integer.BYTES + Long.BYTES;
+						if (length < 0 || length > remaining) {
+							break;
+						}
+						body = new byte[length];
+						in.readFully(body);
+						remaining -= length;
+						CRC32 checksum = new CRC32();
+						checksum.update(body, 0, body.length);
+						if (checksum.getValue() != expected) {
+							break;
+						}
+					} catch (EOFException e) {
+						break;
+					}
+
+					DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+					long sequence = record.readLong();
+					byte type = record.readByte();
+					String path = record.readUTF();
+					TreeMap<String, TreeSet<Integer>> document = new TreeMap<>();
+					int words = record.readInt();
+					for (int i = 0; i < words; i++) {
+						TreeSet<Integer> positions = new TreeSet<>();
+						document.put(record.readUTF(), positions);
+						int count = record.readInt();
+						for (int j = 0; j < count; j++) {
+							positions.add(record.readInt());
+						}
+					}
+
+					if (sequence > after) {
+						replayer.apply(type, path, document);
+					}
+					last = Math.max(last, sequence);
+					valid = size - remaining;
+				}
+			}
+
+			if (valid == 0) {
+				Files.delete(file);
+			} else if (valid < size) {
+				try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+					channel.truncate(valid);
+					channel.force(true);
+				}
+			}
+		}
+		return last;
+	}
+
+	/**
+	 * Lists the log files in the directory, oldest first
+	 *
+	 * @param directory where the log files are
+	 * @return the sorted log files
+	 * @throws IOException
+	 */
+	private static ArrayList<Path> files(Path directory) throws IOException {
+		ArrayList<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+			for (Path file : stream) {
+				files.add(file);
+			}
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	/**
+	 * What to do with each change found while replaying the log.
+	 */
+	public interface Replayer {
+		/**
+		 * Applies one change
+		 *
+		 * @param type     {@link #ADD}, {@link #REMOVE} or {@link #REPLACE}
+		 * @param path     the document that changed
+		 * @param document the words and positions of the document, empty for a
+		 *                 removal
+		 */
+		void apply(byte type, String path, TreeMap<String, TreeSet<Integer>> document);
+	}
+
+	/**
+	 * A change waiting to be written, or a request to start a new file when the
+	 * data is null.
+	 */
+	private static class Entry {
+		private final long sequence;
+		private final byte[] data;
+
+		/**
+		 * Constructs the entry
+		 *
+		 * @param sequence the sequence number of the change
+		 * @param data     the bytes of the record, or null to start a new file
+		 */
+		public Entry(long sequence, byte[] data) {
+			this.sequence = sequence;
+			this.data = data;
+		}
+	}
+}
@@ -0,0 +1,47 @@
+#!/bin/sh
+# Times a single query end to end, from starting java to writing the results,
+# against files that are read again and against a saved index, with and without
+# the class data sharing archive of run.sh and the -warmup pass. Every case is
+# run several times and the best and middle times are printed.
+#
+# usage: CLASSES=<compiled classes> LIBRARIES=<opennlp jar> ./benchmark-startup.sh <text files> [query] [runs]
+#
+# The numbers depend on the machine, the java version and the size of the
+# files, so compare the cases with each other rather than with other machines.
+
+CLASSES=${CLASSES:?set CLASSES to the directory of the compiled classes}
+RUN="$(dirname "$0")/run.sh"
+export CLASSES LIBRARIES JAR ARCHIVE
+
+FILES=${1:?usage: $0 <text files> [query] [runs]}
+QUERY=${2:-search}
+RUNS=${3:-5}
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+echo "$QUERY" > "$WORK/query.txt"
+JAVA="java -cp $CLASSES${LIBRARIES:+:$LIBRARIES}"
+$JAVA Driver -path "$FILES" -save "$WORK/index.bin" > /dev/null || exit 1
+"$RUN" > /dev/null || exit 1
+
+# Prints the best and middle wall clock milliseconds of running a command
+measure() {
+	name=$1
+	shift
+	i=0
+	while [ $i -lt "$RUNS" ]; do
+		start=$(date +%s%N)
+		"$@" > /dev/null
+		echo $((($(date +%s%N) - start) / 1000000))
+		i=$((i + 1))
+	done | sort -n > "$WORK/times"
+	printf '%-32s best %6s ms   median %6s ms\n' "$name" "$(head -n 1 "$WORK/times")" \
+		"$(sed -n "$(((RUNS + 1) / 2))p" "$WORK/times")"
+}
+
+SEARCH="-search $WORK/query.txt -results $WORK/results.json"
+measure "read files" $JAVA Driver -path "$FILES" $SEARCH
+measure "read files, archive" "$RUN" -path "$FILES" $SEARCH
+measure "load index" $JAVA Driver -load "$WORK/index.bin" $SEARCH
+measure "load index, archive" "$RUN" -load "$WORK/index.bin" $SEARCH
+measure "load index, archive, warm up" "$RUN" -warmup -load "$WORK/index.bin" $SEARCH
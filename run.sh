@@ -0,0 +1,47 @@
+#!/bin/sh
+# Runs the Driver from a jar with a class data sharing archive, so the search
+# engine and stemmer classes are mapped in already parsed instead of loaded one
+# by one. Only the compiled classes are packaged into the jar, and the archive
+# is made the first time, and again whenever a class is newer than the jar, by
+# a training run with -XX:ArchiveClassesAtExit. The training run indexes a small
+# sample, saves and loads it, searches it and writes every JSON output, so the
+# classes a real run needs are all in the archive. The archive can only hold
+# classes that come from jars, which is why the classes are packaged first.
+#
+# usage: CLASSES=<compiled classes> LIBRARIES=<opennlp jar> ./run.sh [Driver arguments]
+#
+# JAR and ARCHIVE set where the jar and the archive are kept (default
+# driver.jar and driver.jsa) and JAVA_OPTS is passed to every java run. Needs
+# java 13 or newer.
+
+CLASSES=${CLASSES:?set CLASSES to the directory of the compiled classes}
+JAR=${JAR:-driver.jar}
+ARCHIVE=${ARCHIVE:-driver.jsa}
+CLASSPATH=$JAR${LIBRARIES:+:$LIBRARIES}
+export CLASSPATH
+
+if [ ! -f "$JAR" ] || [ -n "$(find "$CLASSES" -name '*.class' -newer "$JAR" | head -n 1)" ]; then
+	TARGET=$(cd "$(dirname "$JAR")" && pwd)/$(basename "$JAR")
+	(cd "$CLASSES" && find . -name '*.class' | sed 's|^\./||' > "$TARGET.list" &&
+		jar cf "$TARGET" @"$TARGET.list")
+	STATUS=$?
+	rm -f "$TARGET.list" "$ARCHIVE"
+	[ $STATUS -eq 0 ] || exit 1
+fi
+
+if [ ! -f "$ARCHIVE" ]; then
+	WORK=$(mktemp -d)
+	trap 'rm -rf "$WORK"' EXIT
+	mkdir "$WORK/files"
+	echo "The quick brown fox jumps over the lazy dog." > "$WORK/files/fox.txt"
+	echo "Lazy dogs sleep while quick foxes search the fields." > "$WORK/files/dogs.txt"
+	printf 'quick fox\nlazy dogs\n' > "$WORK/queries.txt"
+	java $JAVA_OPTS Driver -path "$WORK/files" -save "$WORK/index.bin" > /dev/null || exit 1
+	java $JAVA_OPTS -XX:ArchiveClassesAtExit="$ARCHIVE" Driver -warmup 1 -load "$WORK/index.bin" \
+		-path "$WORK/files" -save "$WORK/saved.bin" -search "$WORK/queries.txt" -results "$WORK/results.json" \
+		-index "$WORK/index.json" -locations "$WORK/locations.json" > /dev/null || exit 1
+	rm -rf "$WORK"
+	trap - EXIT
+fi
+
+exec java $JAVA_OPTS -XX:SharedArchiveFile="$ARCHIVE" Driver "$@"